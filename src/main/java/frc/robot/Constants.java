@@ -5,6 +5,10 @@
 package frc.robot;
 
 import com.revrobotics.CANSparkBase.IdleMode;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Rotation3d;
+import edu.wpi.first.math.geometry.Transform3d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
 import edu.wpi.first.math.trajectory.TrapezoidProfile;
@@ -32,10 +36,19 @@ public final class Constants {
     public static final double kPXController = 8;
     public static final double kPYController = 8;
     public static final double kPThetaController = 5;
+    // Shared by all three controllers
+    public static final double kIController = 0.01;
 
     public static final TrapezoidProfile.Constraints kThetaControllerConstraints =
         new TrapezoidProfile.Constraints(
             kMaxAngularSpeedRadiansPerSecond, kMaxAngularAccelerationRadiansPerSecondSquared);
+
+    // Event markers along a path
+    // How close to a leg's end the robot has to be before shooting
+    public static final double kShotToleranceMeters = 0.08;
+    public static final double kMarkerHeadingToleranceRadians = Units.degreesToRadians(4);
+    // Markers not reached this long after the path ends are started anyway
+    public static final double kMarkerTimeoutSeconds = 1;
   }
 
   // Constants specifically for Driving & Operation
@@ -84,6 +97,13 @@ public final class Constants {
     public static final double kMagnitudeSlewRate = 2; // percent per second (1 = 100%)
     public static final double kRotationalSlewRate = 5; // percent per second (1 = 100%)
 
+    // Speaker aim assist, takes over rotation while held
+    public static final double kAimP = 5;
+    public static final double kAimD = 0.1;
+    public static final double kAimMaxAngularSpeed = 1.5 * Math.PI; // radians per second
+    public static final double kAimMaxAngularAcceleration = 4 * Math.PI; // radians per second^2
+    public static final double kAimToleranceRadians = Units.degreesToRadians(2);
+
     // Chassis configuration
     public static final double kTrackWidth = Units.inchesToMeters(26.5);
     // Distance between centers of right and left wheels on robot
@@ -95,6 +115,25 @@ public final class Constants {
             new Translation2d(kWheelBase / 2, -kTrackWidth / 2),
             new Translation2d(-kWheelBase / 2, kTrackWidth / 2),
             new Translation2d(-kWheelBase / 2, -kTrackWidth / 2));
+    // Module locations as plain arrays, in the same order as kDriveKinematics
+    public static final double[] kModuleXMeters = {
+      kWheelBase / 2, kWheelBase / 2, -kWheelBase / 2, -kWheelBase / 2
+    };
+    public static final double[] kModuleYMeters = {
+      kTrackWidth / 2, -kTrackWidth / 2, kTrackWidth / 2, -kTrackWidth / 2
+    };
+
+    // Odometry Thread ---
+    // Module positions and the gyro are sampled on their own thread at this rate so the pose
+    // integrates over much smaller steps than the 20ms main loop
+    public static final double kOdometryFrequencyHz = 250;
+    public static final int kOdometryPeriodMs = (int) (1000 / kOdometryFrequencyHz);
+    // Number of samples the main loop can fall behind before new samples are dropped
+    public static final int kOdometryQueueDepth = 32;
+    // Longest the odometry will project a gyro sample forward by its rate, two navX updates
+    public static final double kMaxGyroExtrapolationSeconds = 0.01;
+    // Odometry updates kept for looking up past poses, two seconds worth
+    public static final int kPoseHistoryCapacity = (int) (2 * kOdometryFrequencyHz);
   }
 
   // Constants specifically for the physical robot
@@ -114,15 +153,36 @@ public final class Constants {
 
     public static final int kShooterLeftCanId = 13;
     public static final int kShooterRightCanId = 14;
+    // Flywheel velocity control, shooter speeds are fractions of kFlywheelMaxRpm
+    public static final double kFlywheelMaxRpm = 5000;
+    // Duty cycle per rpm, 1 over the NEO's free speed
+    public static final double kFlywheelFF = 1.0 / 5676;
+    public static final double kFlywheelP = 0.0002;
+    // Both wheels must be this close to their speed for kFlywheelSettleSeconds to shoot
+    public static final double kFlywheelToleranceRpm = 100;
+    public static final double kFlywheelSettleSeconds = 0.06;
+    // Shots by distance to the speaker, read from the deploy directory
+    public static final String kShotTableFile = "shots.csv";
+    // A feed waiting on the flywheels goes anyway after this long
+    public static final double kFlywheelReadyTimeoutSeconds = 1.5;
 
     public static final int kAmpArmCanId = 15;
     public static final double kAmpArmGearRatio =
         27; // 27:1, Motor needs to spin 27 times for the arm to spin once
     public static final double kAmpArmDegreesOut = 121.5;
     public static final double kAmpArmTrigActivate = 0.10;
-    public static final double kAmpArmP = 1.1;
-    public static final double kAmpArmI = 0.03;
-    public static final double kAmpArmD = 0.0;
+    // Amp arm Smart Motion on the SPARK MAX, in motor rotations and motor rpm
+    public static final double kAmpArmP = 1.1 / kAmpArmGearRatio; // was 1.1 per arm rotation
+    public static final double kAmpArmFF = 1.0 / 5676; // duty cycle per rpm
+    public static final double kAmpArmMaxVelocityRpm = 3000;
+    public static final double kAmpArmMaxAccelRpmPerSecond = 6000;
+    public static final double kAmpArmAllowedErrorRotations = 0.1;
+    // Volts to hold the arm level, scaled by the cosine of its angle from level
+    public static final double kAmpArmGravityVolts = 0.3;
+    // Change in that feedforward worth sending the arm's setpoint again for
+    public static final double kAmpArmFFDeadbandVolts = 0.02;
+    // Angle of the arm from level when stowed, where the encoder reads zero
+    public static final double kAmpArmStowedDegrees = -90;
 
     public static final int FeederLeftCanId = 11;
     public static final int FeederRightCanId = 12;
@@ -130,6 +190,15 @@ public final class Constants {
     public static final double FeederInSpeed = 0.3;
     public static final double FeederOutSpeed = -0.18;
     public static final double FeederToShooterSpeed = 0.45;
+    // How long the feeder has to see nothing before a note counts as gone, so a note that
+    // flickers the sensor on its way past is not counted as gone early
+    public static final double kNoteClearSeconds = 0.1;
+    // How long a sensor has to see a note before it counts, to ride out flicker
+    public static final double kNoteDebounceSeconds = 0.04;
+    // Feeder current while a note is being pulled in, well above the free running current
+    public static final double kFeederNoteCurrentAmps = 12;
+    // Whether the limit switch is fitted, an empty analog port can read as pressed
+    public static final boolean kLimitSwitchInstalled = false;
 
     public static final int kPneumaticHubCanId = 50;
 
@@ -152,6 +221,12 @@ public final class Constants {
     public static final double kBackRightChassisAngularOffset = Math.PI / 2;
 
     public static final int LimitSwtichActivation = 193;
+    // The switch goes through an FPGA analog trigger, which sums 2^oversample bits samples and
+    // averages 2^average bits of those, so its limits are LimitSwtichActivation scaled up
+    public static final int kLimitSwitchOversampleBits = 2;
+    public static final int kLimitSwitchAverageBits = 2;
+    // Raw counts above the activation point before the switch counts as released
+    public static final int kLimitSwitchHysteresis = 20;
     // intake motor speeds
     public static final double intakeMotorForward = 0.9;
     public static final double intakeMotorBackward = -0.9;
@@ -216,12 +291,129 @@ public final class Constants {
     // drawing too much power
     public static final int kDrivingMotorCurrentLimit = 40; // amps
     public static final int kTurningMotorCurrentLimit = 15; // amps
+
+    // Setpoint De-duplication ---
+    // Setpoints closer than these to the last one sent are not sent again over CAN, unless the
+    // heartbeat time has passed since the last send
+    public static final double kDrivingSetpointTolerance = 0.005; // meters per second
+    public static final double kTurningSetpointTolerance = 0.002; // radians
+    public static final double kSetpointHeartbeatSeconds = 0.1;
   }
 
   public static final class NeoMotorConstants {
     public static final double kFreeSpeedRpm = 5676;
   }
 
+  // Constants for fusing Limelight poses into the drivetrain's pose estimator
+  public static final class VisionConstants {
+    // Indexes into the botpose_wpiblue array
+    public static final int kBotPoseX = 0;
+    public static final int kBotPoseY = 1;
+    public static final int kBotPoseYaw = 5;
+    public static final int kBotPoseLatency = 6; // pipeline + capture, milliseconds
+    public static final int kBotPoseTagCount = 7;
+    public static final int kBotPoseTagDistance = 9; // average distance to the tags, meters
+    public static final int kBotPoseTagArea = 10; // average area of the tags, percent of the image
+    public static final int kBotPoseLength = 11;
+
+    // Measurements failing any of these are thrown out
+    public static final int kMinTagCount = 1;
+    public static final double kMinTagArea = 0.1; // percent of the image (ta)
+    public static final double kMaxTagDistance = 4.0; // meters
+    public static final double kFieldLengthMeters = 16.54;
+    public static final double kFieldWidthMeters = 8.21;
+
+    // How much the estimator trusts the wheels and gyro
+    public static final double kStateStdDevMeters = 0.05;
+    public static final double kStateStdDevRadians = 0.01;
+    // How much it trusts a measurement of one tag from one meter away, grows with distance squared
+    // and shrinks with more tags
+    public static final double kVisionStdDevMeters = 0.3;
+    public static final double kVisionStdDevRadians = 0.9;
+    // Heading from a single tag is too noisy to use, so it is given no weight
+    public static final double kSingleTagStdDevRadians = 1e6;
+
+    // A frame older than this means the camera has stopped sending, at 20+ fps it is several frames
+    public static final double kFrameStaleSeconds = 0.25;
+    // How far apart the values of one frame can reach the server, well under a frame at 90 fps
+    public static final double kFrameMatchSeconds = 0.005;
+
+    // Tags under the speakers, red then blue
+    public static final int[] kSpeakerTagIds = {3, 4, 7, 8};
+  }
+
+  public static final class SimConstants {
+    // Where the robot is placed on the field in simulation, backed up to the blue speaker
+    public static final Pose2d kStartPose = new Pose2d(1.6, 5.55, Rotation2d.fromDegrees(180));
+    // Seed for the simulated sensor noise, fixed so runs can be repeated
+    public static final long kSeed = 1242;
+
+    // Simulated Limelight 3, mounted on the front of the robot and tilted up towards the speaker
+    public static final Transform3d kRobotToCamera =
+        new Transform3d(0.3, 0, 0.25, new Rotation3d(0, Math.toRadians(-20), 0));
+    public static final double kCameraHorizontalFovRadians = Math.toRadians(62.5);
+    public static final double kCameraVerticalFovRadians = Math.toRadians(48.9);
+    public static final double kCameraMaxRangeMeters = 6;
+    // Further off straight on than this a tag is too skewed to decode
+    public static final double kCameraMaxViewAngleRadians = Math.toRadians(70);
+    public static final double kTagSizeMeters = Units.inchesToMeters(6.5);
+    public static final double kCameraFps = 30;
+    public static final double kCameraPipelineMillis = 20; // tl
+    public static final double kCameraCaptureMillis = 11; // cl
+    // From one tag one meter away, like VisionConstants.kVisionStdDevMeters
+    public static final double kCameraNoiseMeters = 0.02;
+    public static final double kCameraNoiseDegrees = 0.2;
+    public static final double kCameraDropoutChance = 0.02;
+
+    // Simulated swerve modules, stepped as often as the SPARK MAX runs its loops
+    public static final double kSparkLoopSeconds = 0.001;
+    // A quarter of the robot's 54 kg as if it were on the rim of the wheel
+    public static final double kDriveMomentKgMetersSquared =
+        54.0 / 4 * Math.pow(ModuleConstants.kWheelDiameterMeters / 2, 2);
+    public static final double kTurnMomentKgMetersSquared = 0.004;
+    // MAXSwerve steering, 9424:203 from the NEO 550 to the module
+    public static final double kTurningMotorReduction = 9424.0 / 203;
+    // Simulated flywheels, one wheel and its shaft on each side
+    public static final double kFlywheelMomentKgMetersSquared = 0.002;
+
+    // Simulated notes
+    public static final double kIntakeReachMeters = 0.5; // robot center to the intake rollers
+    public static final double kNotePickupRadiusMeters = 0.3;
+    public static final double kNoteTransferSeconds = 0.3; // intake to feeder
+    public static final double kNoteFeedSeconds = 0.1; // feeder to flywheels
+    public static final double kMinShotRpm = 4000;
+    public static final double kMaxShotDistanceMeters = 2.5; // robot center to speaker opening
+
+    // Every auto has to do at least this well in AutoSimulationTest
+    public static final double kMaxAutoPoseErrorMeters = 0.3;
+    public static final double kMaxAutoHeadingErrorDegrees = 10;
+    public static final double kMaxAutoWallSeconds = 5; // of real time, the auto period is 15 s
+
+    // Monte Carlo sweep, each run draws its conditions from these
+    public static final int kSweepRuns = 1000;
+    public static final double kSweepStartStdDevMeters = 0.05; // placing the robot by eye
+    public static final double kSweepStartStdDevDegrees = 2;
+    public static final double kSweepMaxWheelSlip = 0.05;
+    public static final double kSweepMinBatteryVolts = 11.5;
+    public static final double kSweepMaxBatteryVolts = 12.8;
+    // Camera noise is scaled by between these
+    public static final double kSweepMinCameraNoise = 0.5;
+    public static final double kSweepMaxCameraNoise = 3;
+    public static final double kSweepMaxPipelineMillis = 50;
+    public static final double kSweepMaxDropoutChance = 0.2;
+
+    // Trajectory gain tuner, gains are kPX, kPY, kPTheta then the shared I
+    public static final double[] kTunerMinGains = {1, 1, 1, 0};
+    public static final double[] kTunerMaxGains = {16, 16, 12, 0.2};
+    public static final int kTunerGridSteps = 6; // per gain
+    public static final int kTunerBudget = 1000; // candidates tried by random and CMA searches
+    public static final double kTunerBatteryVolts = 12.5;
+    // A candidate's score adds these up over every leg of every auto, lower is better
+    public static final double kTunerErrorWeight = 10; // per meter of RMS tracking error
+    public static final double kTunerHeadingWeight = 1; // per radian of RMS heading error
+    public static final double kTunerLateWeight = 1; // per second settling after the path ends
+  }
+
   // timerValues
   public static final class TimerConstants {
     // from timer from when autonomous starts to autonmous ends
@@ -19,6 +19,7 @@ import frc.robot.commands.Hanger.*;
 import frc.robot.commands.Intake.*;
 import frc.robot.commands.Shooter.*;
 import frc.robot.commands.TeleopCmd;
+import frc.robot.sim.RobotSim;
 import frc.robot.subsystems.DashboardSubsystem;
 import frc.robot.subsystems.DrivetrainSubsystem;
 import frc.robot.subsystems.FeederSubsystem;
@@ -43,25 +44,32 @@ public class RobotContainer {
   private final String auto7 = "7";
 
   // Subsystems
-  private final DrivetrainSubsystem drivetrain = new DrivetrainSubsystem();
+  private final LimelightSubsystem limelight = new LimelightSubsystem();
+  private final DrivetrainSubsystem drivetrain = new DrivetrainSubsystem(limelight);
   private final ShooterSubsystem shooter = new ShooterSubsystem();
   private final IntakeSubsystem intake = new IntakeSubsystem();
-  private final LimelightSubsystem limelight = new LimelightSubsystem();
   private final HangerSubsystem hanger = new HangerSubsystem();
   private final FeederSubsystem feeder = new FeederSubsystem(limelight);
   private final DashboardSubsystem dash = new DashboardSubsystem();
 
+  // Stand-ins for hardware that only exists on the robot, only created in simulation
+  private RobotSim robotSim;
+
   // Commands
   private final TeleopCmd teleopCmd =
       new TeleopCmd(
           drivetrain,
-          () -> cutil.Boolsupplier(Controllers.ps4_LB, DriveConstants.joysticks.DRIVER));
+          limelight,
+          () -> cutil.Boolsupplier(Controllers.ps4_LB, DriveConstants.joysticks.DRIVER),
+          // Hold to aim at the speaker
+          () -> cutil.Boolsupplier(Controllers.ps4_square, DriveConstants.joysticks.DRIVER));
   private final ShooterForwardCmd shooterForwardCmd =
       new ShooterForwardCmd(
           shooter,
           () -> cutil.Boolsupplier(Controllers.ps4_X, DriveConstants.joysticks.OPERATOR),
           () -> cutil.Boolsupplier(Controllers.ps4_square, DriveConstants.joysticks.OPERATOR),
-          () -> cutil.Boolsupplier(Controllers.ps4_O, DriveConstants.joysticks.OPERATOR));
+          () -> cutil.Boolsupplier(Controllers.ps4_O, DriveConstants.joysticks.OPERATOR),
+          limelight::getSpeakerDistance);
 
   // Auto Commands
   private final LeftSpeakerAuto leftSpeakerAuto =
@@ -149,13 +157,36 @@ public class RobotContainer {
         .onFalse(new IntakeStopCmd(intake));
   }
 
+  /** Starts the stand-ins for hardware that only exists on the robot. */
+  public void simulationInit() {
+    robotSim = new RobotSim(drivetrain, shooter, feeder, intake);
+  }
+
+  public void simulationPeriodic() {
+    robotSim.update();
+  }
+
+  /** Returns the simulation, or null on the robot or before simulationInit(). */
+  public RobotSim getSim() {
+    return robotSim;
+  }
+
   public Command getAutonomousCommand() {
+    return getAutonomousCommand(m_chooser.getSelected());
+  }
+
+  /**
+   * Builds an auto by its key in the auto selector, unknown keys get the default.
+   *
+   * @param choice Key of the auto, "1" to "7"
+   */
+  public Command getAutonomousCommand(String choice) {
 
     // Prior Reference:
     // https://github.com/OysterRiverOverdrive/Charged-Up-2023-Atlas_Chainsaw/blob/main/src/main/java/frc/robot/RobotContainer.java
     // Get auto dropdown to run
     Command auto;
-    switch (m_chooser.getSelected()) {
+    switch (choice) {
       default:
       case auto1:
         auto = midTwoAuto;
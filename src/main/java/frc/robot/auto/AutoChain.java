@@ -0,0 +1,146 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import frc.robot.Constants.AutoConstants;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Legs of an auto driven back to back as one trajectory, without stopping or resetting the
+ * odometry between them.
+ *
+ * <p>Each leg is written relative to where the previous one ends, the same as when the legs are
+ * driven separately, so they are moved end to end into the first leg's frame. A leg always starts
+ * heading the same way the previous one ends, so the robot can keep moving across each join. The
+ * speed at a join is the slowest of the two legs' max speeds and what either leg can speed up to
+ * or slow down from over its length. While driving each leg the robot turns to that leg's final
+ * heading, as it does when the leg is driven on its own.
+ */
+public class AutoChain {
+  // Legs moved into the chain's frame
+  private final List<AutoPath> m_paths = new ArrayList<>();
+  // Heading held while driving each leg
+  private final List<Rotation2d> m_rotations = new ArrayList<>();
+
+  // Loaded by getTrajectory()
+  private Trajectory m_trajectory;
+  private double[] m_endTimes;
+
+  /**
+   * Joins legs into one trajectory.
+   *
+   * @param legs Legs to drive in order
+   * @return The chain
+   */
+  public static AutoChain of(AutoPath... legs) {
+    return new AutoChain(List.of(legs));
+  }
+
+  /**
+   * Makes each leg its own chain, for legs that must stop at their ends.
+   *
+   * @param legs Legs to drive in order
+   * @return One chain per leg
+   */
+  public static List<AutoChain> each(List<AutoPath> legs) {
+    List<AutoChain> chains = new ArrayList<>(legs.size());
+    for (AutoPath leg : legs) {
+      chains.add(of(leg));
+    }
+    return chains;
+  }
+
+  private AutoChain(List<AutoPath> legs) {
+    Pose2d frame = new Pose2d();
+    double startSpeed = 0;
+    for (int i = 0; i < legs.size(); i++) {
+      AutoPath leg = legs.get(i);
+      double endSpeed = 0;
+      if (i + 1 < legs.size()) {
+        AutoPath next = legs.get(i + 1);
+        double acceleration = AutoConstants.kMaxAccelerationMetersPerSecondSquared;
+        // Either leg can change speed by this much over its length, with room to spare
+        endSpeed =
+            Math.min(
+                Math.min(leg.getMaxSpeed(), next.getMaxSpeed()),
+                Math.sqrt(acceleration * Math.min(leg.getLength(), next.getLength())));
+      }
+      m_paths.add(leg.inFrame(frame, startSpeed, endSpeed));
+      Pose2d end = leg.getEnd();
+      frame = frame.plus(new Transform2d(end.getTranslation(), end.getRotation()));
+      m_rotations.add(frame.getRotation());
+      startSpeed = endSpeed;
+    }
+  }
+
+  /** Returns the legs moved into the chain's frame, these are what get cached. */
+  public List<AutoPath> getPaths() {
+    return m_paths;
+  }
+
+  /** Returns every leg joined into one trajectory, loaded from the cache the first time. */
+  public Trajectory getTrajectory() {
+    if (m_trajectory == null) {
+      m_endTimes = new double[m_paths.size()];
+      Trajectory trajectory = null;
+      for (int i = 0; i < m_paths.size(); i++) {
+        Trajectory leg = TrajectoryCache.get(m_paths.get(i));
+        trajectory = trajectory == null ? leg : trajectory.concatenate(leg);
+        m_endTimes[i] = trajectory.getTotalTimeSeconds();
+      }
+      m_trajectory = trajectory;
+    }
+    return m_trajectory;
+  }
+
+  /**
+   * Returns when a leg starts along the trajectory.
+   *
+   * @param leg Index of the leg
+   * @return Seconds since the start of the trajectory
+   */
+  public double getStartTime(int leg) {
+    getTrajectory();
+    return leg == 0 ? 0 : m_endTimes[leg - 1];
+  }
+
+  /**
+   * Returns when a leg ends along the trajectory.
+   *
+   * @param leg Index of the leg
+   * @return Seconds since the start of the trajectory
+   */
+  public double getEndTime(int leg) {
+    getTrajectory();
+    return m_endTimes[leg];
+  }
+
+  /**
+   * Returns where a leg ends, in the chain's frame. This is the pose the robot should be at.
+   *
+   * @param leg Index of the leg
+   * @return The leg's end pose
+   */
+  public Pose2d getEnd(int leg) {
+    return m_paths.get(leg).getEnd();
+  }
+
+  /**
+   * Returns the heading the robot should turn to at a time along the trajectory.
+   *
+   * @param time Seconds since the start of the trajectory
+   * @return The heading of the leg being driven at that time
+   */
+  public Rotation2d getRotation(double time) {
+    getTrajectory();
+    for (int i = 0; i < m_endTimes.length - 1; i++) {
+      if (time < m_endTimes[i]) {
+        return m_rotations.get(i);
+      }
+    }
+    return m_rotations.get(m_rotations.size() - 1);
+  }
+}
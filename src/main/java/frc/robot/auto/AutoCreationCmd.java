@@ -4,19 +4,11 @@
 
 package frc.robot.auto;
 
-import edu.wpi.first.math.controller.PIDController;
-import edu.wpi.first.math.controller.ProfiledPIDController;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Translation2d;
-import edu.wpi.first.math.trajectory.Trajectory;
-import edu.wpi.first.math.trajectory.TrajectoryConfig;
-import edu.wpi.first.math.trajectory.TrajectoryGenerator;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.InstantCommand;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
-import edu.wpi.first.wpilibj2.command.SwerveControllerCommand;
-import frc.robot.Constants.AutoConstants;
-import frc.robot.Constants.DriveConstants;
 import frc.robot.subsystems.DrivetrainSubsystem;
 import java.util.List;
 
@@ -39,42 +31,7 @@ public class AutoCreationCmd {
    */
   public Command AutoDriveCmd(
       DrivetrainSubsystem _drivetrain, List<Translation2d> waypoints, Pose2d finalrest) {
-    drivetrain = _drivetrain;
-
-    TrajectoryConfig trajectoryConfig =
-        new TrajectoryConfig(
-                AutoConstants.kMaxSpeedMetersPerSecond,
-                AutoConstants.kMaxAccelerationMetersPerSecondSquared)
-            .setKinematics(DriveConstants.kDriveKinematics);
-    // Define PID controllers for tracking trajectory
-    PIDController xController = new PIDController(AutoConstants.kPXController, 0.01, 0);
-    PIDController yController = new PIDController(AutoConstants.kPYController, 0.01, 0);
-    ProfiledPIDController thetaController =
-        new ProfiledPIDController(
-            AutoConstants.kPThetaController, 0.01, 0, AutoConstants.kThetaControllerConstraints);
-    thetaController.enableContinuousInput(-Math.PI, Math.PI);
-    // Generate trajectory
-    Trajectory trajectory =
-        TrajectoryGenerator.generateTrajectory(
-            drivetrain.getPose(), waypoints, finalrest, trajectoryConfig);
-
-    // Construct command to follow trajectory
-    SwerveControllerCommand swerveControllerCommand =
-        new SwerveControllerCommand(
-            trajectory,
-            drivetrain::getPose,
-            DriveConstants.kDriveKinematics,
-            xController,
-            yController,
-            thetaController,
-            drivetrain::setModuleStates,
-            drivetrain);
-
-    // Add some init and wrap-up, and return everything
-    return new SequentialCommandGroup(
-        new InstantCommand(() -> drivetrain.resetOdometry(trajectory.getInitialPose())),
-        swerveControllerCommand,
-        new InstantCommand(() -> drivetrain.stopModules()));
+    return AutoDriveCmd(_drivetrain, new AutoPath(waypoints, finalrest));
   }
 
   public Command AutoDriveSpeedVar(
@@ -82,39 +39,39 @@ public class AutoCreationCmd {
       DrivetrainSubsystem _drivetrain,
       List<Translation2d> waypoints,
       Pose2d finalrest) {
-    drivetrain = _drivetrain;
+    return AutoDriveCmd(_drivetrain, new AutoPath(maxSpeed, waypoints, finalrest));
+  }
 
-    TrajectoryConfig trajectoryConfig =
-        new TrajectoryConfig(maxSpeed, AutoConstants.kMaxAccelerationMetersPerSecondSquared)
-            .setKinematics(DriveConstants.kDriveKinematics);
-    // Define PID controllers for tracking trajectory
-    PIDController xController = new PIDController(AutoConstants.kPXController, 0.01, 0);
-    PIDController yController = new PIDController(AutoConstants.kPYController, 0.01, 0);
-    ProfiledPIDController thetaController =
-        new ProfiledPIDController(
-            AutoConstants.kPThetaController, 0.01, 0, AutoConstants.kThetaControllerConstraints);
-    thetaController.enableContinuousInput(-Math.PI, Math.PI);
-    // Generate trajectory
-    Trajectory trajectory =
-        TrajectoryGenerator.generateTrajectory(
-            drivetrain.getPose(), waypoints, finalrest, trajectoryConfig);
+  /**
+   * Method to autonomously drive the robot along a path. The trajectory comes from the deployed
+   * {@link TrajectoryCache} when it is there, and is only generated here when it is not.
+   *
+   * @param _drivetrain Swerve Drivetrain Subsystem Instance
+   * @param path The path to drive
+   * @return A Command variable telling the robot to drive
+   */
+  public Command AutoDriveCmd(DrivetrainSubsystem _drivetrain, AutoPath path) {
+    return AutoDriveCmd(_drivetrain, AutoChain.of(path));
+  }
 
-    // Construct command to follow trajectory
-    SwerveControllerCommand swerveControllerCommand =
-        new SwerveControllerCommand(
-            trajectory,
-            drivetrain::getPose,
-            DriveConstants.kDriveKinematics,
-            xController,
-            yController,
-            thetaController,
-            drivetrain::setModuleStates,
-            drivetrain);
+  /**
+   * Method to autonomously drive the robot through several legs without stopping between them.
+   * The odometry is only reset at the start, so it carries through every leg.
+   *
+   * @param _drivetrain Swerve Drivetrain Subsystem Instance
+   * @param chain The legs to drive
+   * @param markers Commands to start at points along the way, see {@link AutoMarker}
+   * @return A Command variable telling the robot to drive
+   */
+  public Command AutoDriveCmd(
+      DrivetrainSubsystem _drivetrain, AutoChain chain, AutoMarker... markers) {
+    drivetrain = _drivetrain;
 
     // Add some init and wrap-up, and return everything
     return new SequentialCommandGroup(
-        new InstantCommand(() -> drivetrain.resetOdometry(trajectory.getInitialPose())),
-        swerveControllerCommand,
+        new InstantCommand(
+            () -> drivetrain.resetOdometry(chain.getTrajectory().getInitialPose())),
+        new AutoFollowCmd(drivetrain, chain, markers),
         new InstantCommand(() -> drivetrain.stopModules()));
   }
 }
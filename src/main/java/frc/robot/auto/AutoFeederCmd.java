@@ -6,13 +6,56 @@ package frc.robot.auto;
 
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.RobotConstants;
 import frc.robot.subsystems.FeederSubsystem;
+import frc.robot.subsystems.ShooterSubsystem;
 
 public class AutoFeederCmd extends Command {
   private FeederSubsystem feeder;
   private Timer timer = new Timer();
   public boolean toShooter;
   public double timeNum;
+  // Whether to stop on the sensor rather than only on time
+  private boolean untilSensor;
+  // Whether the note has been seen yet, so an empty feeder does not count as the note leaving
+  private boolean sawNote;
+  // Flywheels to wait for before feeding, null to feed straight away
+  private ShooterSubsystem shooter;
+  private boolean waiting;
+
+  /**
+   * Runs the feeder until its sensor says it is done. Feeding to the shooter ends once the note
+   * has left the feeder, feeding in ends once a note is seated. The time is only a safety net for
+   * a sensor that never changes, such as when there was no note to feed.
+   *
+   * @param feeders Feeder Subsystem Instance
+   * @param goToShooter true to feed into the shooter, false to feed in from the intake
+   * @param timeout Seconds to give up after
+   * @return The command
+   */
+  public static AutoFeederCmd untilSensor(
+      FeederSubsystem feeders, boolean goToShooter, double timeout) {
+    AutoFeederCmd command = new AutoFeederCmd(feeders, goToShooter, timeout);
+    command.untilSensor = true;
+    return command;
+  }
+
+  /**
+   * Feeds the note into the shooter the first loop both flywheels are ready, then runs until the
+   * note has left the feeder like {@link #untilSensor}. If the flywheels are not ready after
+   * {@link RobotConstants#kFlywheelReadyTimeoutSeconds} the note is fed anyway.
+   *
+   * @param feeders Feeder Subsystem Instance
+   * @param shooters Shooter Subsystem Instance, only read
+   * @param timeout Seconds to give up after once feeding
+   * @return The command
+   */
+  public static AutoFeederCmd whenReady(
+      FeederSubsystem feeders, ShooterSubsystem shooters, double timeout) {
+    AutoFeederCmd command = untilSensor(feeders, true, timeout);
+    command.shooter = shooters;
+    return command;
+  }
 
   public AutoFeederCmd(FeederSubsystem feeders, boolean goToShooter, double time) {
     feeder = feeders;
@@ -26,11 +69,23 @@ public class AutoFeederCmd extends Command {
   public void initialize() {
     timer.reset();
     timer.start();
+    sawNote = false;
+    waiting = shooter != null;
   }
 
   // Called every time the scheduler runs while the command is scheduled.
   @Override
   public void execute() {
+    if (waiting) {
+      if (!shooter.isReady()
+          && !timer.hasElapsed(RobotConstants.kFlywheelReadyTimeoutSeconds)) {
+        feeder.StopFeederCmd();
+        return;
+      }
+      // Time the feed from when it starts
+      waiting = false;
+      timer.restart();
+    }
     if (toShooter) {
       feeder.ToShooterCmd();
     } else {
@@ -47,8 +102,21 @@ public class AutoFeederCmd extends Command {
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
+    if (waiting) {
+      return false;
+    }
     double currTime = timer.get();
+    if (currTime >= timeNum) {
+      return true;
+    }
 
-    return currTime >= timeNum ? true : false;
+    if (!untilSensor) {
+      return false;
+    }
+    if (!toShooter) {
+      return feeder.hasNote();
+    }
+    sawNote |= feeder.hasNote();
+    return sawNote && feeder.noteGone().getAsBoolean();
   }
 }
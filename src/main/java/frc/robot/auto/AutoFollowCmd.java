@@ -0,0 +1,170 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.controller.HolonomicDriveController;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import edu.wpi.first.wpilibj2.command.Subsystem;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import java.util.Collections;
+
+/**
+ * Follows an {@link AutoChain} and runs its {@link AutoMarker}s.
+ *
+ * <p>Every tick the markers are checked against the time along the trajectory and the robot's
+ * pose, and the commands of any that were reached are started. Marker commands run inside this
+ * command, the same way a command group runs its commands, so this command requires their
+ * subsystems too. It finishes once the trajectory is done and every marker command has finished,
+ * holding the robot at the end of the trajectory while it waits. A marker that still has not been
+ * reached {@link AutoConstants#kMarkerTimeoutSeconds} after the trajectory ends is started anyway,
+ * so a note is never carried into the next leg because the robot settled just outside a
+ * tolerance. A marker made to run {@link AutoMarker#until} another is ended once the other's
+ * command has finished. Like the scheduler, a marker command that starts interrupts any running
+ * marker command that needs the same subsystem, so pulling a note in gives way to feeding it.
+ */
+public class AutoFollowCmd extends Command {
+  private final DrivetrainSubsystem m_drivetrain;
+  private final AutoChain m_chain;
+  private final AutoMarker[] m_markers;
+  private final HolonomicDriveController m_controller;
+  private final Timer m_timer = new Timer();
+
+  private final boolean[] m_started;
+  private final boolean[] m_running;
+  // Index of the marker whose command ends each marker's command, -1 if it ends itself
+  private final int[] m_until;
+  private Trajectory m_trajectory;
+
+  /**
+   * @param drivetrain Swerve Drivetrain Subsystem Instance
+   * @param chain The legs to drive
+   * @param markers Commands to run along the way
+   */
+  public AutoFollowCmd(DrivetrainSubsystem drivetrain, AutoChain chain, AutoMarker... markers) {
+    m_drivetrain = drivetrain;
+    m_chain = chain;
+    m_markers = markers;
+    m_started = new boolean[markers.length];
+    m_running = new boolean[markers.length];
+    m_until = new int[markers.length];
+    for (int i = 0; i < markers.length; i++) {
+      m_until[i] = -1;
+      AutoMarker until = markers[i].getUntil();
+      for (int j = 0; until != null && j < markers.length; j++) {
+        if (markers[j] == until) {
+          m_until[i] = j;
+        }
+      }
+      if (until != null && m_until[i] < 0) {
+        throw new IllegalArgumentException("A marker can only run until a marker on its chain");
+      }
+    }
+
+    // Define PID controllers for tracking trajectory
+    PIDController xController =
+        new PIDController(AutoConstants.kPXController, AutoConstants.kIController, 0);
+    PIDController yController =
+        new PIDController(AutoConstants.kPYController, AutoConstants.kIController, 0);
+    ProfiledPIDController thetaController =
+        new ProfiledPIDController(
+            AutoConstants.kPThetaController,
+            AutoConstants.kIController,
+            0,
+            AutoConstants.kThetaControllerConstraints);
+    thetaController.enableContinuousInput(-Math.PI, Math.PI);
+    m_controller = new HolonomicDriveController(xController, yController, thetaController);
+
+    addRequirements(drivetrain);
+    for (AutoMarker marker : markers) {
+      Command command = marker.getCommand();
+      // Marker commands belong to this command now and cannot be scheduled on their own
+      CommandScheduler.getInstance().registerComposedCommands(command);
+      addRequirements(command.getRequirements().toArray(new Subsystem[0]));
+    }
+  }
+
+  @Override
+  public void initialize() {
+    m_trajectory = m_chain.getTrajectory();
+    for (int i = 0; i < m_markers.length; i++) {
+      m_started[i] = false;
+      m_running[i] = false;
+    }
+    m_timer.restart();
+  }
+
+  @Override
+  public void execute() {
+    double time = m_timer.get();
+    Pose2d pose = m_drivetrain.getPose();
+
+    Trajectory.State desired = m_trajectory.sample(time);
+    ChassisSpeeds speeds = m_controller.calculate(pose, desired, m_chain.getRotation(time));
+    m_drivetrain.setModuleStates(DriveConstants.kDriveKinematics.toSwerveModuleStates(speeds));
+
+    boolean timedOut =
+        time >= m_trajectory.getTotalTimeSeconds() + AutoConstants.kMarkerTimeoutSeconds;
+    for (int i = 0; i < m_markers.length; i++) {
+      Command command = m_markers[i].getCommand();
+      if (!m_started[i] && (timedOut || m_markers[i].isReached(m_chain, time, pose))) {
+        for (int j = 0; j < m_markers.length; j++) {
+          Command other = m_markers[j].getCommand();
+          if (m_running[j]
+              && !Collections.disjoint(command.getRequirements(), other.getRequirements())) {
+            other.end(true);
+            m_running[j] = false;
+          }
+        }
+        m_started[i] = true;
+        m_running[i] = true;
+        command.initialize();
+      }
+      if (m_running[i]) {
+        command.execute();
+        if (command.isFinished()) {
+          command.end(false);
+          m_running[i] = false;
+        }
+      }
+    }
+
+    for (int i = 0; i < m_markers.length; i++) {
+      int until = m_until[i];
+      if (m_running[i] && until >= 0 && m_started[until] && !m_running[until]) {
+        m_markers[i].getCommand().end(false);
+        m_running[i] = false;
+      }
+    }
+  }
+
+  @Override
+  public void end(boolean interrupted) {
+    for (int i = 0; i < m_markers.length; i++) {
+      if (m_running[i]) {
+        m_markers[i].getCommand().end(true);
+        m_running[i] = false;
+      }
+    }
+    m_timer.stop();
+  }
+
+  @Override
+  public boolean isFinished() {
+    if (!m_timer.hasElapsed(m_trajectory.getTotalTimeSeconds())) {
+      return false;
+    }
+    for (int i = 0; i < m_markers.length; i++) {
+      if (!m_started[i] || m_running[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
@@ -6,12 +6,15 @@ package frc.robot.auto;
 
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.FeederSubsystem;
 import frc.robot.subsystems.IntakeSubsystem;
 
 public class AutoIntakeCmd extends Command {
   private Timer timer = new Timer();
   IntakeSubsystem intake;
   double timeRunning;
+  // Stops the intake once it has a note, null to run for the whole time
+  FeederSubsystem feeder;
 
   public AutoIntakeCmd(IntakeSubsystem intakes, double timeRun) {
     // True means only bumper motor will run, false means only roller motor will run.
@@ -20,6 +23,19 @@ public class AutoIntakeCmd extends Command {
     addRequirements(intakes);
   }
 
+  /**
+   * Runs the intake until a note is seated in the feeder. Only the feeder's sensor is read, the
+   * feeder is not required, so this can run alongside a feed.
+   *
+   * @param intakes Intake Subsystem Instance
+   * @param feeders Feeder Subsystem Instance, to watch for the note
+   * @param timeRun Seconds to give up after
+   */
+  public AutoIntakeCmd(IntakeSubsystem intakes, FeederSubsystem feeders, double timeRun) {
+    this(intakes, timeRun);
+    feeder = feeders;
+  }
+
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
@@ -45,6 +61,9 @@ public class AutoIntakeCmd extends Command {
   @Override
   public boolean isFinished() {
 
+    if (feeder != null && feeder.hasNote()) {
+      return true;
+    }
     return timer.hasElapsed(timeRunning) ? true : false;
   }
 }
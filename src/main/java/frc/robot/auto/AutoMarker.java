@@ -0,0 +1,100 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.Constants.AutoConstants;
+
+/**
+ * A command attached to a point along an {@link AutoChain}, started by {@link AutoFollowCmd} the
+ * first tick the point is reached. This ties shots and feeds to where the robot is on the path
+ * instead of to how long the auto has been running, so they stay in step when the paths change.
+ */
+public class AutoMarker {
+  private final int m_leg;
+  private final double m_progress;
+  private final double m_distance;
+  private final Command m_command;
+  // Marker whose command finishing ends this one, null to let the command end itself
+  private AutoMarker m_until;
+
+  /**
+   * Starts a command part way through a leg, by time along the leg. Good for things that need a
+   * head start before the robot gets somewhere, like spinning up the shooter.
+   *
+   * @param leg Index of the leg in the chain
+   * @param progress 0 at the start of the leg to 1 at its end
+   * @param command Command to start
+   * @return The marker
+   */
+  public static AutoMarker atProgress(int leg, double progress, Command command) {
+    return new AutoMarker(leg, progress, Double.NaN, command);
+  }
+
+  /**
+   * Starts a command once the robot is close to the end of a leg and facing the way it should.
+   * This is measured from the robot's pose rather than the trajectory, so a feed waits for the
+   * robot to actually be in place, and goes as soon as it is.
+   *
+   * @param leg Index of the leg in the chain
+   * @param distance How close the robot has to be, in meters
+   * @param command Command to start
+   * @return The marker
+   */
+  public static AutoMarker near(int leg, double distance, Command command) {
+    return new AutoMarker(leg, Double.NaN, distance, command);
+  }
+
+  private AutoMarker(int leg, double progress, double distance, Command command) {
+    m_leg = leg;
+    m_progress = progress;
+    m_distance = distance;
+    m_command = command;
+  }
+
+  /**
+   * Ends this marker's command once another marker's command has finished, rather than leaving it
+   * to end itself. This keeps the shooter spinning from a head start until the feed is done,
+   * however late the robot gets in place for the feed.
+   *
+   * @param marker Marker on the same chain whose command ends this one
+   * @return This marker
+   */
+  public AutoMarker until(AutoMarker marker) {
+    m_until = marker;
+    return this;
+  }
+
+  public Command getCommand() {
+    return m_command;
+  }
+
+  /** Returns the marker whose command ends this one, or null if the command ends itself. */
+  public AutoMarker getUntil() {
+    return m_until;
+  }
+
+  /**
+   * Checks whether the marker has been reached.
+   *
+   * @param chain Chain being followed
+   * @param time Seconds since the start of the trajectory
+   * @param pose Where the robot is, in the chain's frame
+   * @return true once the command should start
+   */
+  public boolean isReached(AutoChain chain, double time, Pose2d pose) {
+    double start = chain.getStartTime(m_leg);
+    if (time < start) {
+      // Legs often end where an earlier one started, so nothing counts until the leg is driven
+      return false;
+    }
+    if (Double.isNaN(m_distance)) {
+      return time >= start + m_progress * (chain.getEndTime(m_leg) - start);
+    }
+    Pose2d end = chain.getEnd(m_leg);
+    double headingError =
+        MathUtil.angleModulus(pose.getRotation().getRadians() - end.getRotation().getRadians());
+    return pose.getTranslation().getDistance(end.getTranslation()) <= m_distance
+        && Math.abs(headingError) <= AutoConstants.kMarkerHeadingToleranceRadians;
+  }
+}
@@ -0,0 +1,154 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.math.geometry.Translation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.math.trajectory.TrajectoryConfig;
+import edu.wpi.first.math.trajectory.TrajectoryGenerator;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.DriveConstants;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One leg of an auto, described the same way as {@link AutoCreationCmd#AutoDriveCmd}. A leg on
+ * its own starts at the origin and at rest, since the odometry is reset to the start of each leg
+ * before it is driven. Legs joined by an {@link AutoChain} are moved to where the previous leg
+ * ends and keep moving across the joins.
+ *
+ * <p>Everything the generated trajectory depends on goes into {@link #key()}, so a trajectory
+ * cached with one set of constants is never used with another.
+ */
+public class AutoPath {
+  private final Pose2d m_start;
+  private final List<Translation2d> m_waypoints;
+  private final Pose2d m_end;
+  private final double m_maxSpeed;
+  private final double m_startSpeed;
+  private final double m_endSpeed;
+
+  /**
+   * @param waypoints A list of points the robot should travel through
+   * @param end Pose2d of what the robot's final resting position should be
+   */
+  public AutoPath(List<Translation2d> waypoints, Pose2d end) {
+    this(AutoConstants.kMaxSpeedMetersPerSecond, waypoints, end);
+  }
+
+  /**
+   * @param maxSpeed Max speed of the trajectory in meters per second
+   * @param waypoints A list of points the robot should travel through
+   * @param end Pose2d of what the robot's final resting position should be
+   */
+  public AutoPath(double maxSpeed, List<Translation2d> waypoints, Pose2d end) {
+    this(new Pose2d(), waypoints, end, maxSpeed, 0, 0);
+  }
+
+  private AutoPath(
+      Pose2d start,
+      List<Translation2d> waypoints,
+      Pose2d end,
+      double maxSpeed,
+      double startSpeed,
+      double endSpeed) {
+    m_start = start;
+    m_waypoints = waypoints;
+    m_end = end;
+    m_maxSpeed = maxSpeed;
+    m_startSpeed = startSpeed;
+    m_endSpeed = endSpeed;
+  }
+
+  /**
+   * Returns this leg moved so that its origin is at {@code frame}, starting and ending at the given
+   * speeds.
+   *
+   * @param frame Pose the leg's origin moves to
+   * @param startSpeed Speed at the start in meters per second
+   * @param endSpeed Speed at the end in meters per second
+   * @return The moved leg
+   */
+  public AutoPath inFrame(Pose2d frame, double startSpeed, double endSpeed) {
+    List<Translation2d> waypoints = new ArrayList<>(m_waypoints.size());
+    for (Translation2d waypoint : m_waypoints) {
+      waypoints.add(waypoint.rotateBy(frame.getRotation()).plus(frame.getTranslation()));
+    }
+    return new AutoPath(
+        frame.plus(asTransform(m_start)),
+        waypoints,
+        frame.plus(asTransform(m_end)),
+        m_maxSpeed,
+        startSpeed,
+        endSpeed);
+  }
+
+  public Pose2d getStart() {
+    return m_start;
+  }
+
+  public List<Translation2d> getWaypoints() {
+    return m_waypoints;
+  }
+
+  public Pose2d getEnd() {
+    return m_end;
+  }
+
+  public double getMaxSpeed() {
+    return m_maxSpeed;
+  }
+
+  /** Returns the length of straight lines through the waypoints, the path is at least this long. */
+  public double getLength() {
+    double length = 0;
+    Translation2d previous = m_start.getTranslation();
+    for (Translation2d waypoint : m_waypoints) {
+      length += previous.getDistance(waypoint);
+      previous = waypoint;
+    }
+    return length + previous.getDistance(m_end.getTranslation());
+  }
+
+  /** Generates the trajectory from scratch, this is the slow path the cache avoids. */
+  public Trajectory generate() {
+    TrajectoryConfig trajectoryConfig =
+        new TrajectoryConfig(m_maxSpeed, AutoConstants.kMaxAccelerationMetersPerSecondSquared)
+            .setKinematics(DriveConstants.kDriveKinematics)
+            .setStartVelocity(m_startSpeed)
+            .setEndVelocity(m_endSpeed);
+    return TrajectoryGenerator.generateTrajectory(m_start, m_waypoints, m_end, trajectoryConfig);
+  }
+
+  /** Returns a hash of the path and every constant its trajectory is generated with. */
+  public long key() {
+    long key = 17;
+    key = mix(key, m_maxSpeed);
+    key = mix(key, m_startSpeed);
+    key = mix(key, m_endSpeed);
+    key = mix(key, m_start.getX());
+    key = mix(key, m_start.getY());
+    key = mix(key, m_start.getRotation().getRadians());
+    key = mix(key, AutoConstants.kMaxAccelerationMetersPerSecondSquared);
+    for (int i = 0; i < DriveConstants.kModuleXMeters.length; i++) {
+      key = mix(key, DriveConstants.kModuleXMeters[i]);
+      key = mix(key, DriveConstants.kModuleYMeters[i]);
+    }
+    for (Translation2d waypoint : m_waypoints) {
+      key = mix(key, waypoint.getX());
+      key = mix(key, waypoint.getY());
+    }
+    key = mix(key, m_end.getX());
+    key = mix(key, m_end.getY());
+    key = mix(key, m_end.getRotation().getRadians());
+    return key;
+  }
+
+  private static Transform2d asTransform(Pose2d pose) {
+    return new Transform2d(pose.getTranslation(), pose.getRotation());
+  }
+
+  private static long mix(long key, double value) {
+    return key * 1_000_003L + Double.doubleToLongBits(value);
+  }
+}
@@ -6,6 +6,7 @@ package frc.robot.auto;
 
 import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj2.command.Command;
+import frc.robot.subsystems.FeederSubsystem;
 import frc.robot.subsystems.ShooterSubsystem;
 
 public class AutoShooterCmd extends Command {
@@ -14,6 +15,9 @@ public class AutoShooterCmd extends Command {
   double rInSpeed;
   double lInSpeed;
   double timeRunning;
+  // Stops the shooter once the note has left, null to run for the whole time
+  FeederSubsystem feeder;
+  boolean sawNote;
 
   public AutoShooterCmd(
       ShooterSubsystem shoots, double leftInputSpeed, double rightInputSpeed, double timeRun) {
@@ -24,11 +28,44 @@ public class AutoShooterCmd extends Command {
     addRequirements(shoots);
   }
 
+  /**
+   * Runs the shooter until it is interrupted, for spinning up ahead of a feed that decides when
+   * the shot is over, see {@link AutoMarker#until}.
+   *
+   * @param shoots Shooter Subsystem Instance
+   * @param leftInputSpeed Left motor speed
+   * @param rightInputSpeed Right motor speed
+   */
+  public AutoShooterCmd(ShooterSubsystem shoots, double leftInputSpeed, double rightInputSpeed) {
+    this(shoots, leftInputSpeed, rightInputSpeed, Double.POSITIVE_INFINITY);
+  }
+
+  /**
+   * Runs the shooter until the note has left the feeder. Only the feeder's sensor is read, the
+   * feeder is not required, so the feed can run alongside.
+   *
+   * @param shoots Shooter Subsystem Instance
+   * @param feeders Feeder Subsystem Instance, to watch for the note
+   * @param leftInputSpeed Left motor speed
+   * @param rightInputSpeed Right motor speed
+   * @param timeRun Seconds to give up after
+   */
+  public AutoShooterCmd(
+      ShooterSubsystem shoots,
+      FeederSubsystem feeders,
+      double leftInputSpeed,
+      double rightInputSpeed,
+      double timeRun) {
+    this(shoots, leftInputSpeed, rightInputSpeed, timeRun);
+    feeder = feeders;
+  }
+
   // Called when the command is initially scheduled.
   @Override
   public void initialize() {
     timer.reset();
     timer.start();
+    sawNote = false;
   }
 
   // Called every time the scheduler runs while the command is scheduled.
@@ -46,7 +83,12 @@ public class AutoShooterCmd extends Command {
   // Returns true when the command should end.
   @Override
   public boolean isFinished() {
-
+    if (feeder != null) {
+      sawNote |= feeder.hasNote();
+      if (sawNote && feeder.noteGone().getAsBoolean()) {
+        return true;
+      }
+    }
     return timer.hasElapsed(timeRunning) ? true : false;
   }
 }
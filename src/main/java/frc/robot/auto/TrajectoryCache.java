@@ -0,0 +1,170 @@
+package frc.robot.auto;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.trajectory.Trajectory;
+import edu.wpi.first.wpilibj.Filesystem;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Auto trajectories generated at build time by {@link TrajectoryCacheGenerator} and deployed as a
+ * binary file, so the robot does not spend boot time generating splines.
+ *
+ * <p>The file is memory mapped the first time a trajectory is asked for, and each trajectory is
+ * only decoded when it is asked for. A path whose key is not in the file (the constants or the
+ * path changed without the file being regenerated) is generated at runtime instead.
+ *
+ * <p>Layout, big endian:
+ *
+ * <pre>
+ * int magic, int version, int path count
+ * for each path: long key, int state count, then for each state 7 doubles:
+ *   time, velocity, acceleration, x, y, heading (radians), curvature
+ * </pre>
+ */
+public final class TrajectoryCache {
+  public static final String kFileName = "trajectories.bin";
+
+  private static final int kMagic = 0x5452414A; // "TRAJ"
+  private static final int kVersion = 1;
+  private static final int kDoublesPerState = 7;
+
+  private static MappedByteBuffer s_buffer;
+  // Offset of each path's state count, by key
+  private static Map<Long, Integer> s_offsets;
+
+  private TrajectoryCache() {}
+
+  /**
+   * Returns a path's trajectory, from the deployed file if it is there.
+   *
+   * @param path Path to get the trajectory of
+   * @return The trajectory
+   */
+  public static synchronized Trajectory get(AutoPath path) {
+    if (s_offsets == null) {
+      load(new File(Filesystem.getDeployDirectory(), kFileName));
+    }
+    Integer offset = s_offsets.get(path.key());
+    if (offset == null) {
+      System.out.println("Trajectory not in " + kFileName + ", generating it instead");
+      return path.generate();
+    }
+    return read(s_buffer, offset);
+  }
+
+  /**
+   * Reads trajectories from a file instead of the deploy directory, for tools that run off the
+   * robot.
+   *
+   * @param file The trajectory file
+   */
+  public static synchronized void useFile(File file) {
+    load(file);
+  }
+
+  // Maps the file and indexes the paths in it, without decoding any of them
+  private static void load(File file) {
+    s_offsets = new HashMap<>();
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt() != kMagic || buffer.getInt() != kVersion) {
+        System.out.println(kFileName + " is not a version " + kVersion + " trajectory file");
+        return;
+      }
+      int count = buffer.getInt();
+      for (int i = 0; i < count; i++) {
+        long key = buffer.getLong();
+        int offset = buffer.position();
+        int states = buffer.getInt();
+        buffer.position(offset + Integer.BYTES + states * kDoublesPerState * Double.BYTES);
+        s_offsets.put(key, offset);
+      }
+      s_buffer = buffer;
+    } catch (IOException | RuntimeException e) {
+      System.out.println("Could not load " + kFileName + ": " + e);
+      s_offsets.clear();
+    }
+  }
+
+  private static Trajectory read(ByteBuffer buffer, int offset) {
+    int count = buffer.getInt(offset);
+    List<Trajectory.State> states = new ArrayList<>(count);
+    int position = offset + Integer.BYTES;
+    for (int i = 0; i < count; i++) {
+      double time = buffer.getDouble(position);
+      double velocity = buffer.getDouble(position + 8);
+      double acceleration = buffer.getDouble(position + 16);
+      double x = buffer.getDouble(position + 24);
+      double y = buffer.getDouble(position + 32);
+      double heading = buffer.getDouble(position + 40);
+      double curvature = buffer.getDouble(position + 48);
+      states.add(
+          new Trajectory.State(
+              time, velocity, acceleration, new Pose2d(x, y, new Rotation2d(heading)), curvature));
+      position += kDoublesPerState * Double.BYTES;
+    }
+    return new Trajectory(states);
+  }
+
+  /**
+   * Generates every path and writes them to a file, used by the build.
+   *
+   * @param paths Paths to generate, duplicates are only written once
+   * @param out Stream to write the file to
+   * @throws IOException If the file cannot be written
+   */
+  public static void write(List<AutoPath> paths, OutputStream out) throws IOException {
+    Map<Long, Trajectory> trajectories = new HashMap<>();
+    for (AutoPath path : paths) {
+      trajectories.computeIfAbsent(path.key(), key -> path.generate());
+    }
+
+    DataOutputStream data = new DataOutputStream(out);
+    data.writeInt(kMagic);
+    data.writeInt(kVersion);
+    data.writeInt(trajectories.size());
+    for (Map.Entry<Long, Trajectory> entry : trajectories.entrySet()) {
+      List<Trajectory.State> states = entry.getValue().getStates();
+      data.writeLong(entry.getKey());
+      data.writeInt(states.size());
+      for (Trajectory.State state : states) {
+        data.writeDouble(state.timeSeconds);
+        data.writeDouble(state.velocityMetersPerSecond);
+        data.writeDouble(state.accelerationMetersPerSecondSq);
+        data.writeDouble(state.poseMeters.getX());
+        data.writeDouble(state.poseMeters.getY());
+        data.writeDouble(state.poseMeters.getRotation().getRadians());
+        data.writeDouble(state.curvatureRadPerMeter);
+      }
+    }
+    data.flush();
+  }
+
+  /**
+   * Writes the cache file for a list of paths.
+   *
+   * @param paths Paths to generate
+   * @param file File to write
+   * @throws IOException If the file cannot be written
+   */
+  public static void write(List<AutoPath> paths, File file) throws IOException {
+    file.getParentFile().mkdirs();
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      write(paths, out);
+    }
+  }
+}
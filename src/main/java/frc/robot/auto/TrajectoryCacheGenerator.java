@@ -0,0 +1,77 @@
+package frc.robot.auto;
+
+import frc.robot.auto.plans.BlueUNHFinal1242;
+import frc.robot.auto.plans.FourNoteAuto;
+import frc.robot.auto.plans.LeftSpeakerAuto;
+import frc.robot.auto.plans.MidTwoAuto;
+import frc.robot.auto.plans.OutsideTwoAuto;
+import frc.robot.auto.plans.RedUNHFinal1242;
+import frc.robot.auto.plans.RightSpeakerAuto;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes every auto's trajectories to the deploy directory, run by the generateTrajectories
+ * Gradle task before every build. Add new autos here.
+ *
+ * <p>Also prints how much driving time each auto saves by chaining legs together, compared with
+ * driving every leg separately and stopping in between.
+ */
+public final class TrajectoryCacheGenerator {
+  private final List<AutoPath> m_paths = new ArrayList<>();
+
+  private TrajectoryCacheGenerator() {}
+
+  /**
+   * Adds one auto's trajectories and reports the time it saves.
+   *
+   * @param name Name of the auto
+   * @param legs Every leg as if driven separately
+   * @param drives What the auto actually drives
+   */
+  private void add(String name, List<AutoPath> legs, List<AutoChain> drives) {
+    double segmented = 0;
+    for (AutoPath leg : legs) {
+      segmented += leg.generate().getTotalTimeSeconds();
+    }
+    double chained = 0;
+    for (AutoChain drive : drives) {
+      for (AutoPath path : drive.getPaths()) {
+        chained += path.generate().getTotalTimeSeconds();
+        m_paths.add(path);
+      }
+    }
+    System.out.printf(
+        "%s: %.2f s driving, %.2f s if every leg stopped, %.2f s saved%n",
+        name, chained, segmented, segmented - chained);
+  }
+
+  /**
+   * @param args The file to write
+   */
+  public static void main(String[] args) throws IOException {
+    TrajectoryCacheGenerator generator = new TrajectoryCacheGenerator();
+    generator.add("MidTwoAuto", MidTwoAuto.paths(), MidTwoAuto.drives());
+    generator.add("LeftSpeakerAuto", LeftSpeakerAuto.paths(), LeftSpeakerAuto.drives());
+    generator.add("RightSpeakerAuto", RightSpeakerAuto.paths(), RightSpeakerAuto.drives());
+    generator.add("RedUNHFinal1242", RedUNHFinal1242.paths(), RedUNHFinal1242.drives());
+    generator.add("BlueUNHFinal1242", BlueUNHFinal1242.paths(), BlueUNHFinal1242.drives());
+    // DashboardSubsystem.getAlliance() is 1 or -1
+    for (double alliance : new double[] {1, -1}) {
+      String suffix = alliance > 0 ? " (1)" : " (-1)";
+      generator.add(
+          "FourNoteAuto" + suffix, FourNoteAuto.paths(alliance), FourNoteAuto.drives(alliance));
+      generator.add(
+          "OutsideTwoAuto" + suffix,
+          OutsideTwoAuto.paths(alliance),
+          OutsideTwoAuto.drives(alliance));
+    }
+
+    File file =
+        new File(args.length > 0 ? args[0] : "src/main/deploy/" + TrajectoryCache.kFileName);
+    TrajectoryCache.write(generator.m_paths, file);
+    System.out.println("Wrote " + generator.m_paths.size() + " trajectories to " + file);
+  }
+}
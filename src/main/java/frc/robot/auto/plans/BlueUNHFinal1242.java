@@ -9,8 +9,12 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+import frc.robot.auto.AutoChain;
 import frc.robot.auto.AutoCreationCmd;
+import frc.robot.auto.AutoPath;
 import frc.robot.auto.AutoFeederCmd;
 import frc.robot.auto.AutoIntakeCmd;
 import frc.robot.auto.AutoShooterCmd;
@@ -22,44 +26,48 @@ import frc.robot.subsystems.ShooterSubsystem;
 import java.util.List;
 
 public class BlueUNHFinal1242 extends ParallelCommandGroup {
+  /** Every path this auto drives, in order. */
+  public static List<AutoPath> paths() {
+    return List.of(
+        new AutoPath(
+            List.of(new Translation2d(0.3, 0)),
+            new Pose2d(0.76, -0.12, new Rotation2d(2 * Math.PI / 3))),
+        new AutoPath(
+            List.of(new Translation2d(0.156, -0.6)), new Pose2d(0.95, -1.53, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(-.95 / 2, 1.53 / 2)),
+            new Pose2d(-.95, 1.63, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(1, -1)),
+            new Pose2d(1.2, -1.3, new Rotation2d(-2 * Math.PI / 6))),
+        new AutoPath(
+            5.6, List.of(new Translation2d(1, 0)), new Pose2d(2.3, 0, new Rotation2d(0))));
+  }
+
+  /** What this auto drives, in order. Legs in the same chain are driven without stopping. */
+  public static List<AutoChain> drives() {
+    List<AutoPath> paths = paths();
+    // Taxi straight into the race
+    return List.of(
+        AutoChain.of(paths.get(0)),
+        AutoChain.of(paths.get(1)),
+        AutoChain.of(paths.get(2)),
+        AutoChain.of(paths.get(3), paths.get(4)));
+  }
+
   public BlueUNHFinal1242(
       DrivetrainSubsystem drivetrain,
       IntakeSubsystem intake,
       FeederSubsystem feeder,
       ShooterSubsystem shooter) {
     AutoCreationCmd autodrive = new AutoCreationCmd();
+    List<AutoChain> drives = drives();
 
     // Auto Driving Commands
-    Command RightShoot =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(0.3, 0)),
-            new Pose2d(0.76, -0.12, new Rotation2d(2 * Math.PI / 3)));
-
-    Command RightNote =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(0.156, -0.6)),
-            new Pose2d(0.95, -1.53, new Rotation2d(0)));
-
-    Command ReturnNote =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(-.95 / 2, 1.53 / 2)),
-            new Pose2d(-.95, 1.63, new Rotation2d(0)));
-
-    Command Taxi =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(1, -1)),
-            new Pose2d(1.2, -1.3, new Rotation2d(-2 * Math.PI / 6)));
-
-    Command race =
-        autodrive.AutoDriveSpeedVar(
-            5.6,
-            drivetrain,
-            List.of(new Translation2d(1, 0)),
-            new Pose2d(2.3, 0, new Rotation2d(0)));
+    Command RightShoot = autodrive.AutoDriveCmd(drivetrain, drives.get(0));
+    Command RightNote = autodrive.AutoDriveCmd(drivetrain, drives.get(1));
+    Command ReturnNote = autodrive.AutoDriveCmd(drivetrain, drives.get(2));
+    Command TaxiRace = autodrive.AutoDriveCmd(drivetrain, drives.get(3));
 
     addCommands(
         // Drivetrain Sequential
@@ -70,17 +78,18 @@ public class BlueUNHFinal1242 extends ParallelCommandGroup {
             new AutoSleepCmd(.5),
             ReturnNote,
             new AutoSleepCmd(.5),
-            Taxi,
-            race),
+            TaxiRace),
 
-        // Intake Sequential
-        new SequentialCommandGroup(new AutoSleepCmd(0), new AutoIntakeCmd(intake, 15)),
+        // Intake Sequential, picks up the second note once the first is shot
+        new SequentialCommandGroup(
+            new WaitUntilCommand(feeder.noteGone()), new AutoIntakeCmd(intake, feeder, 14)),
 
-        // Feeder Sequential
+        // Feeder Sequential, pulls the second note in between shots until it is seated
         new SequentialCommandGroup(
             new AutoSleepCmd(1),
             new AutoFeederCmd(feeder, true, 0.5),
-            new AutoSleepCmd(4.5),
+            new ParallelDeadlineGroup(
+                new AutoSleepCmd(4.5), AutoFeederCmd.untilSensor(feeder, false, 4.5)),
             new AutoFeederCmd(feeder, true, .5)),
 
         // Shooter Sequential
@@ -5,12 +5,17 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.auto.AutoChain;
 import frc.robot.auto.AutoCreationCmd;
+import frc.robot.auto.AutoPath;
 import frc.robot.auto.AutoFeederCmd;
 import frc.robot.auto.AutoIntakeCmd;
+import frc.robot.auto.AutoMarker;
 import frc.robot.auto.AutoShooterCmd;
-import frc.robot.auto.AutoSleepCmd;
 import frc.robot.subsystems.DashboardSubsystem;
 import frc.robot.subsystems.DrivetrainSubsystem;
 import frc.robot.subsystems.FeederSubsystem;
@@ -20,6 +25,47 @@ import java.util.List;
 
 public class FourNoteAuto extends ParallelCommandGroup {
 
+  /**
+   * Every path this auto drives, in order.
+   *
+   * @param alliance 1 or -1, from {@link DashboardSubsystem#getAlliance()}
+   */
+  public static List<AutoPath> paths(double alliance) {
+    return List.of(
+        new AutoPath(List.of(new Translation2d(.08, 0)), new Pose2d(.2, 0, new Rotation2d(0))),
+        new AutoPath(List.of(new Translation2d(.85, 0)), new Pose2d(1.69, 0, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(-.85, alliance * 0.01)),
+            new Pose2d(-1.60, 0, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(.5, alliance * 1)),
+            new Pose2d(0.89, alliance * 1.3, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(-.5, alliance * -1)),
+            new Pose2d(-0.84, alliance * -1.44, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(.5, alliance * -1)),
+            new Pose2d(0.89, alliance * -1.44, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(-.5, alliance * 1)),
+            new Pose2d(-0.84, alliance * 1.30, new Rotation2d(0))));
+  }
+
+  /**
+   * What this auto drives, in order. Legs in the same chain are driven without stopping. Each
+   * chain after the first goes out to a note and comes back to shoot it.
+   *
+   * @param alliance 1 or -1, from {@link DashboardSubsystem#getAlliance()}
+   */
+  public static List<AutoChain> drives(double alliance) {
+    List<AutoPath> paths = paths(alliance);
+    return List.of(
+        AutoChain.of(paths.get(0)),
+        AutoChain.of(paths.get(1), paths.get(2)),
+        AutoChain.of(paths.get(3), paths.get(4)),
+        AutoChain.of(paths.get(5), paths.get(6)));
+  }
+
   public FourNoteAuto(
       DrivetrainSubsystem drivetrain,
       IntakeSubsystem intake,
@@ -27,74 +73,66 @@ public class FourNoteAuto extends ParallelCommandGroup {
       ShooterSubsystem shooter,
       DashboardSubsystem dash) {
     AutoCreationCmd autodrive = new AutoCreationCmd();
+    List<AutoChain> drives = drives(dash.getAlliance());
 
     // Auto Driving Commands
-
+    // The first note is shot from the start, as soon as the shooter is up to speed
     Command showyDrive1 =
         autodrive.AutoDriveCmd(
-            drivetrain, List.of(new Translation2d(.08, 0)), new Pose2d(.2, 0, new Rotation2d(0)));
+            drivetrain,
+            drives.get(0),
+            AutoMarker.atProgress(
+                0,
+                0,
+                new ParallelDeadlineGroup(
+                    AutoFeederCmd.whenReady(feeder, shooter, .5),
+                    new AutoShooterCmd(shooter, 1, 0.9))));
+    // The rest pull the note in on the way out until it is seated, spin up on the way back, and
+    // feed once the robot is in place and up to speed. The shooter keeps running until the feed is
+    // done.
+    AutoMarker feed2 =
+        AutoMarker.near(
+            1, AutoConstants.kShotToleranceMeters, AutoFeederCmd.whenReady(feeder, shooter, .5));
     Command showyDrive2 =
         autodrive.AutoDriveCmd(
-            drivetrain, List.of(new Translation2d(.85, 0)), new Pose2d(1.69, 0, new Rotation2d(0)));
+            drivetrain,
+            drives.get(1),
+            AutoMarker.atProgress(0, 0, AutoFeederCmd.untilSensor(feeder, false, 4)),
+            AutoMarker.atProgress(1, .4, new AutoShooterCmd(shooter, 1, 0.9)).until(feed2),
+            feed2);
+    AutoMarker feed3 =
+        AutoMarker.near(
+            1, AutoConstants.kShotToleranceMeters, AutoFeederCmd.whenReady(feeder, shooter, .8));
     Command showyDrive3 =
         autodrive.AutoDriveCmd(
             drivetrain,
-            List.of(new Translation2d(-.85, dash.getAlliance() * 0.01)),
-            new Pose2d(-1.60, 0, new Rotation2d(0)));
+            drives.get(2),
+            AutoMarker.atProgress(0, 0, AutoFeederCmd.untilSensor(feeder, false, 4)),
+            AutoMarker.atProgress(1, .4, new AutoShooterCmd(shooter, 1, 0.9)).until(feed3),
+            feed3);
+    AutoMarker feed4 =
+        AutoMarker.near(
+            1, AutoConstants.kShotToleranceMeters, AutoFeederCmd.whenReady(feeder, shooter, .8));
     Command showyDrive4 =
         autodrive.AutoDriveCmd(
             drivetrain,
-            List.of(new Translation2d(.5, dash.getAlliance() * 1)),
-            new Pose2d(0.89, dash.getAlliance() * 1.3, new Rotation2d(0)));
-    Command showyDrive5 =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(-.5, dash.getAlliance() * -1)),
-            new Pose2d(-0.84, dash.getAlliance() * -1.44, new Rotation2d(0)));
-    Command showyDrive6 =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(.5, dash.getAlliance() * -1)),
-            new Pose2d(0.89, dash.getAlliance() * -1.44, new Rotation2d(0)));
-    Command showyDrive7 =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(-.5, dash.getAlliance() * 1)),
-            new Pose2d(-0.84, dash.getAlliance() * 1.30, new Rotation2d(0)));
-    addCommands(
+            drives.get(3),
+            AutoMarker.atProgress(0, 0, AutoFeederCmd.untilSensor(feeder, false, 4)),
+            AutoMarker.atProgress(1, .4, new AutoShooterCmd(shooter, 1, 0.9)).until(feed4),
+            feed4);
 
-        // Driving groups
-        new SequentialCommandGroup(
-            showyDrive1,
-            new AutoSleepCmd(1),
-            showyDrive2,
-            new AutoSleepCmd(0),
-            showyDrive3,
-            new AutoSleepCmd(.5),
-            showyDrive4,
-            new AutoSleepCmd(0),
-            showyDrive5,
-            new AutoSleepCmd(.5),
-            showyDrive6,
-            new AutoSleepCmd(0),
-            showyDrive7),
-
-        // Intake group
-        new SequentialCommandGroup(new AutoIntakeCmd(intake, 20)),
+    addCommands(
 
-        // Feeder group
-        new SequentialCommandGroup(
-            new AutoSleepCmd(1.4), new AutoFeederCmd(feeder, true, .5),
-            new AutoSleepCmd(2.9), new AutoFeederCmd(feeder, true, .5),
-            new AutoSleepCmd(3.9), new AutoFeederCmd(feeder, true, .8),
-            new AutoSleepCmd(3.85), new AutoFeederCmd(feeder, true, .8)),
+        // Driving groups, the feeder and shooter run on markers along the way
+        new SequentialCommandGroup(showyDrive1, showyDrive2, showyDrive3, showyDrive4),
 
-        // 9.55
-        // Shooter group
+        // Intake group, picks up each note once the one before it is shot
         new SequentialCommandGroup(
-            new AutoSleepCmd(.5), new AutoShooterCmd(shooter, 1, 0.9, 1.5),
-            new AutoSleepCmd(2.3), new AutoShooterCmd(shooter, 1, 0.9, 1.5),
-            new AutoSleepCmd(3.8), new AutoShooterCmd(shooter, 1, 0.9, 1.8),
-            new AutoSleepCmd(3.2), new AutoShooterCmd(shooter, 1, 0.9, 1.8)));
+            new WaitUntilCommand(feeder.noteGone()),
+            new AutoIntakeCmd(intake, feeder, 13),
+            new WaitUntilCommand(feeder.noteGone()),
+            new AutoIntakeCmd(intake, feeder, 13),
+            new WaitUntilCommand(feeder.noteGone()),
+            new AutoIntakeCmd(intake, feeder, 13)));
   }
 }
@@ -5,8 +5,12 @@ import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
+import edu.wpi.first.wpilibj2.command.ParallelDeadlineGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+import frc.robot.auto.AutoChain;
 import frc.robot.auto.AutoCreationCmd;
+import frc.robot.auto.AutoPath;
 import frc.robot.auto.AutoFeederCmd;
 import frc.robot.auto.AutoIntakeCmd;
 import frc.robot.auto.AutoShooterCmd;
@@ -19,30 +23,34 @@ import java.util.List;
 
 public class MidTwoAuto extends ParallelCommandGroup {
 
+  /** Every path this auto drives, in order. */
+  public static List<AutoPath> paths() {
+    return List.of(
+        new AutoPath(List.of(new Translation2d(.22, 0)), new Pose2d(.5, 0, new Rotation2d(0))),
+        new AutoPath(List.of(new Translation2d(.85, 0)), new Pose2d(1.30, 0, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(-.85, .2)), new Pose2d(-1.25, 0, new Rotation2d(0))),
+        new AutoPath(List.of(new Translation2d(.85, 0)), new Pose2d(1.30, 0, new Rotation2d(0))));
+  }
+
+  /** What this auto drives, in order. Legs in the same chain are driven without stopping. */
+  public static List<AutoChain> drives() {
+    return AutoChain.each(paths());
+  }
+
   public MidTwoAuto(
       DrivetrainSubsystem drivetrain,
       IntakeSubsystem intake,
       FeederSubsystem feeder,
       ShooterSubsystem shooter) {
     AutoCreationCmd autodrive = new AutoCreationCmd();
+    List<AutoChain> drives = drives();
 
     // Auto Driving Commands
-
-    Command showyDrive1 =
-        autodrive.AutoDriveCmd(
-            drivetrain, List.of(new Translation2d(.22, 0)), new Pose2d(.5, 0, new Rotation2d(0)));
-    Command showyDrive2 =
-        autodrive.AutoDriveCmd(
-            drivetrain, List.of(new Translation2d(.85, 0)), new Pose2d(1.30, 0, new Rotation2d(0)));
-    Command showyDrive3 =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(-.85, .2)),
-            new Pose2d(-1.25, 0, new Rotation2d(0)));
-
-    Command taxi =
-        autodrive.AutoDriveCmd(
-            drivetrain, List.of(new Translation2d(.85, 0)), new Pose2d(1.30, 0, new Rotation2d(0)));
+    Command showyDrive1 = autodrive.AutoDriveCmd(drivetrain, drives.get(0));
+    Command showyDrive2 = autodrive.AutoDriveCmd(drivetrain, drives.get(1));
+    Command showyDrive3 = autodrive.AutoDriveCmd(drivetrain, drives.get(2));
+    Command taxi = autodrive.AutoDriveCmd(drivetrain, drives.get(3));
 
     addCommands(
 
@@ -50,13 +58,17 @@ public class MidTwoAuto extends ParallelCommandGroup {
         new SequentialCommandGroup(
             showyDrive1, new AutoSleepCmd(1), showyDrive2, showyDrive3, new AutoSleepCmd(.5), taxi),
 
-        // Intake group
-        new SequentialCommandGroup(new AutoIntakeCmd(intake, 20)),
+        // Intake group, picks up the second note once the first is shot
+        new SequentialCommandGroup(
+            new WaitUntilCommand(feeder.noteGone()), new AutoIntakeCmd(intake, feeder, 13)),
 
-        // Feeder group
+        // Feeder group, pulls the second note in between shots until it is seated
         new SequentialCommandGroup(
-            new AutoSleepCmd(1.4), new AutoFeederCmd(feeder, true, .5),
-            new AutoSleepCmd(2.9), new AutoFeederCmd(feeder, true, .5)),
+            new AutoSleepCmd(1.4),
+            new AutoFeederCmd(feeder, true, .5),
+            new ParallelDeadlineGroup(
+                new AutoSleepCmd(2.9), AutoFeederCmd.untilSensor(feeder, false, 2.9)),
+            new AutoFeederCmd(feeder, true, .5)),
         // Shooter group
         new SequentialCommandGroup(
             new AutoSleepCmd(.5), new AutoShooterCmd(shooter, 1, 1, 1.5),
@@ -10,11 +10,15 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import edu.wpi.first.wpilibj2.command.WaitUntilCommand;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.auto.AutoChain;
 import frc.robot.auto.AutoCreationCmd;
+import frc.robot.auto.AutoPath;
 import frc.robot.auto.AutoFeederCmd;
 import frc.robot.auto.AutoIntakeCmd;
+import frc.robot.auto.AutoMarker;
 import frc.robot.auto.AutoShooterCmd;
-import frc.robot.auto.AutoSleepCmd;
 import frc.robot.subsystems.DashboardSubsystem;
 import frc.robot.subsystems.DrivetrainSubsystem;
 import frc.robot.subsystems.FeederSubsystem;
@@ -23,6 +27,40 @@ import frc.robot.subsystems.ShooterSubsystem;
 import java.util.List;
 
 public class OutsideTwoAuto extends ParallelCommandGroup {
+  /**
+   * Every path this auto drives, in order.
+   *
+   * @param alliance 1 or -1, from {@link DashboardSubsystem#getAlliance()}
+   */
+  public static List<AutoPath> paths(double alliance) {
+    return List.of(
+        new AutoPath(
+            List.of(new Translation2d(0.3, 0)),
+            new Pose2d(0.76, alliance * 0.12, new Rotation2d(alliance * -2 * Math.PI / 3))),
+        new AutoPath(
+            List.of(new Translation2d(0.156, alliance * 0.6)),
+            new Pose2d(0.95, alliance * 1.53, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(-.95 / 2, alliance * -1.53 / 2)),
+            new Pose2d(-.95, alliance * -1.53, new Rotation2d(0))),
+        new AutoPath(
+            List.of(new Translation2d(1, 1)), new Pose2d(1.2, alliance * 1.2, new Rotation2d(0))));
+  }
+
+  /**
+   * What this auto drives, in order. Legs in the same chain are driven without stopping, the
+   * note is picked up on the way through.
+   *
+   * @param alliance 1 or -1, from {@link DashboardSubsystem#getAlliance()}
+   */
+  public static List<AutoChain> drives(double alliance) {
+    List<AutoPath> paths = paths(alliance);
+    return List.of(
+        AutoChain.of(paths.get(0)),
+        AutoChain.of(paths.get(1), paths.get(2)),
+        AutoChain.of(paths.get(3)));
+  }
+
   public OutsideTwoAuto(
       DrivetrainSubsystem drivetrain,
       IntakeSubsystem intake,
@@ -30,60 +68,38 @@ public class OutsideTwoAuto extends ParallelCommandGroup {
       ShooterSubsystem shooter,
       DashboardSubsystem dash) {
     AutoCreationCmd autodrive = new AutoCreationCmd();
+    List<AutoChain> drives = drives(dash.getAlliance());
 
     // Auto Driving Commands
+    // Spin up while turning to the speaker, feed once facing it and up to speed. The shooter keeps
+    // running until the feed is done. The second note is pulled in on the way out until seated.
+    AutoMarker firstFeed =
+        AutoMarker.near(
+            0, AutoConstants.kShotToleranceMeters, AutoFeederCmd.whenReady(feeder, shooter, 0.5));
     Command RightShoot =
         autodrive.AutoDriveCmd(
             drivetrain,
-            List.of(new Translation2d(0.3, 0)),
-            new Pose2d(
-                0.76,
-                dash.getAlliance() * 0.12,
-                new Rotation2d(dash.getAlliance() * -2 * Math.PI / 3)));
-
+            drives.get(0),
+            AutoMarker.atProgress(0, 0, new AutoShooterCmd(shooter, 1, 0.85)).until(firstFeed),
+            firstFeed);
+    AutoMarker secondFeed =
+        AutoMarker.near(
+            1, AutoConstants.kShotToleranceMeters, AutoFeederCmd.whenReady(feeder, shooter, .5));
     Command RightNote =
         autodrive.AutoDriveCmd(
             drivetrain,
-            List.of(new Translation2d(0.156, dash.getAlliance() * 0.6)),
-            new Pose2d(0.95, dash.getAlliance() * 1.53, new Rotation2d(0)));
-
-    Command ReturnNote =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(-.95 / 2, dash.getAlliance() * -1.53 / 2)),
-            new Pose2d(-.95, dash.getAlliance() * -1.53, new Rotation2d(0)));
-
-    Command Taxi =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(1, 1)),
-            new Pose2d(1.2, dash.getAlliance() * 1.2, new Rotation2d(0)));
+            drives.get(1),
+            AutoMarker.atProgress(0, 0, AutoFeederCmd.untilSensor(feeder, false, 4)),
+            AutoMarker.atProgress(1, .4, new AutoShooterCmd(shooter, 1, 0.85)).until(secondFeed),
+            secondFeed);
+    Command Taxi = autodrive.AutoDriveCmd(drivetrain, drives.get(2));
 
     addCommands(
-        // Drivetrain Sequential
-        new SequentialCommandGroup(
-            RightShoot,
-            new AutoSleepCmd(.5),
-            RightNote,
-            new AutoSleepCmd(.5),
-            ReturnNote,
-            new AutoSleepCmd(.5),
-            Taxi),
-
-        // Intake Sequential
-        new SequentialCommandGroup(new AutoSleepCmd(0), new AutoIntakeCmd(intake, 15)),
-
-        // Feeder Sequential
-        new SequentialCommandGroup(
-            new AutoSleepCmd(1),
-            new AutoFeederCmd(feeder, true, 0.5),
-            new AutoSleepCmd(4.5),
-            new AutoFeederCmd(feeder, true, .5)),
+        // Drivetrain Sequential, the feeder and shooter run on markers along the way
+        new SequentialCommandGroup(RightShoot, RightNote, Taxi),
 
-        // Shooter Sequential
+        // Intake Sequential, picks up the second note once the first is shot
         new SequentialCommandGroup(
-            new AutoShooterCmd(shooter, 1, 0.85, 2),
-            new AutoSleepCmd(3),
-            new AutoShooterCmd(shooter, 1, 0.85, 2)));
+            new WaitUntilCommand(feeder.noteGone()), new AutoIntakeCmd(intake, feeder, 14)));
   }
 }
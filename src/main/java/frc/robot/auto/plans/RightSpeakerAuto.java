@@ -10,7 +10,9 @@ import edu.wpi.first.math.geometry.Translation2d;
 import edu.wpi.first.wpilibj2.command.Command;
 import edu.wpi.first.wpilibj2.command.ParallelCommandGroup;
 import edu.wpi.first.wpilibj2.command.SequentialCommandGroup;
+import frc.robot.auto.AutoChain;
 import frc.robot.auto.AutoCreationCmd;
+import frc.robot.auto.AutoPath;
 import frc.robot.auto.AutoFeederCmd;
 import frc.robot.auto.AutoShooterCmd;
 import frc.robot.auto.AutoSleepCmd;
@@ -21,25 +23,33 @@ import frc.robot.subsystems.ShooterSubsystem;
 import java.util.List;
 
 public class RightSpeakerAuto extends ParallelCommandGroup {
+  /** Every path this auto drives, in order. */
+  public static List<AutoPath> paths() {
+    return List.of(
+        new AutoPath(
+            List.of(new Translation2d(0.3, 0)),
+            new Pose2d(0.76, 0.12, new Rotation2d(-2 * Math.PI / 3))),
+        new AutoPath(
+            List.of(new Translation2d(0.156, -0.0425)),
+            new Pose2d(1.2, 1.2, new Rotation2d(2 * Math.PI / 6))));
+  }
+
+  /** What this auto drives, in order. Legs in the same chain are driven without stopping. */
+  public static List<AutoChain> drives() {
+    return AutoChain.each(paths());
+  }
+
   public RightSpeakerAuto(
       DrivetrainSubsystem drivetrain,
       IntakeSubsystem intake,
       FeederSubsystem feeder,
       ShooterSubsystem shooter) {
     AutoCreationCmd autodrive = new AutoCreationCmd();
+    List<AutoChain> drives = drives();
 
     // Auto Driving Commands
-    Command LeftShoot =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(0.3, 0)),
-            new Pose2d(0.76, 0.12, new Rotation2d(-2 * Math.PI / 3)));
-
-    Command OuttaThatBitch =
-        autodrive.AutoDriveCmd(
-            drivetrain,
-            List.of(new Translation2d(0.156, -0.0425)),
-            new Pose2d(1.2, 1.2, new Rotation2d(2 * Math.PI / 6)));
+    Command LeftShoot = autodrive.AutoDriveCmd(drivetrain, drives.get(0));
+    Command OuttaThatBitch = autodrive.AutoDriveCmd(drivetrain, drives.get(1));
 
     addCommands(
         // Drivetrain Sequential
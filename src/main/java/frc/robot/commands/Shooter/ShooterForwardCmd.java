@@ -4,30 +4,38 @@
 
 package frc.robot.commands.Shooter;
 
-import edu.wpi.first.math.controller.PIDController;
 import edu.wpi.first.wpilibj.Joystick;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.RobotConstants;
 import frc.robot.Controllers;
 import frc.robot.subsystems.ShooterSubsystem;
+import java.util.function.DoubleSupplier;
 import java.util.function.Supplier;
 
 public class ShooterForwardCmd extends Command {
   private final ShooterSubsystem shooter;
   private final Joystick oper = new Joystick(DriveConstants.kOperControllerPort);
-  private final PIDController pidControl =
-      new PIDController(RobotConstants.kAmpArmP, RobotConstants.kAmpArmI, RobotConstants.kAmpArmD);
   private final Supplier<Boolean> fullShot;
   private final Supplier<Boolean> leftShot;
   private final Supplier<Boolean> rightShot;
+  private final DoubleSupplier speakerDistance;
 
+  /**
+   * @param shooters Shooter Subsystem Instance
+   * @param fullShotSupplier Button for a speaker shot
+   * @param leftShotSupplier Button for a shot curving left
+   * @param rightShotSupplier Button for a shot curving right
+   * @param speakerDistanceSupplier Distance to the speaker in meters, NaN when it cannot be seen
+   */
   public ShooterForwardCmd(
       ShooterSubsystem shooters,
       Supplier<Boolean> fullShotSupplier,
       Supplier<Boolean> leftShotSupplier,
-      Supplier<Boolean> rightShotSupplier) {
+      Supplier<Boolean> rightShotSupplier,
+      DoubleSupplier speakerDistanceSupplier) {
     fullShot = fullShotSupplier;
+    speakerDistance = speakerDistanceSupplier;
     leftShot = leftShotSupplier;
     rightShot = rightShotSupplier;
     shooter = shooters;
@@ -42,26 +50,32 @@ public class ShooterForwardCmd extends Command {
   @Override
   public void execute() {
     if (fullShot.get()) {
-      shooter.ShooterForwardCmd(1, 1);
-      shooter.setArmSpeed(pidControl.calculate(shooter.getAmpArmEnc(), 0));
+      double distance = speakerDistance.getAsDouble();
+      if (Double.isNaN(distance) || !shooter.hasShotTable()) {
+        // Can't see the speaker, or no distances have been measured yet, use the subwoofer shot
+        shooter.ShooterForwardCmd(1, 1);
+        shooter.setArmGoal(0);
+      } else {
+        shooter.setShot(distance);
+      }
     } else if (leftShot.get()) {
-      shooter.setArmSpeed(pidControl.calculate(shooter.getAmpArmEnc(), 0));
+      shooter.setArmGoal(0);
       shooter.ShooterForwardCmd(0.9, 1);
     } else if (rightShot.get()) {
-      shooter.setArmSpeed(pidControl.calculate(shooter.getAmpArmEnc(), 0));
+      shooter.setArmGoal(0);
       shooter.ShooterForwardCmd(1, 0.9);
     } else {
       // trigger value (how far it's pushed in) is set as the speed of the motor
       double trigValue = oper.getRawAxis(Controllers.ps4_RT);
       shooter.ShooterForwardCmd(trigValue * 0.5, trigValue * 0.5);
 
-      // Amp arm PID and activation
+      // Amp arm activation, the SPARK MAX moves it
       double degreeout =
           RobotConstants.kAmpArmDegreesOut / 360; // Convert to percentage of rotation
       if (trigValue >= RobotConstants.kAmpArmTrigActivate) {
-        shooter.setArmSpeed(pidControl.calculate(shooter.getAmpArmEnc(), degreeout));
+        shooter.setArmGoal(degreeout);
       } else {
-        shooter.setArmSpeed(pidControl.calculate(shooter.getAmpArmEnc(), 0));
+        shooter.setArmGoal(0);
       }
     }
   }
@@ -5,10 +5,15 @@
 package frc.robot.commands;
 
 import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.trajectory.TrapezoidProfile;
 import edu.wpi.first.wpilibj.Joystick;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.Command;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.LimelightSubsystem;
 import java.util.function.Supplier;
 
 public class TeleopCmd extends Command {
@@ -21,9 +26,35 @@ public class TeleopCmd extends Command {
   private double speedTurn;
   private Supplier<Boolean> fieldOrient;
 
-  public TeleopCmd(DrivetrainSubsystem drives, Supplier<Boolean> fieldOrient) {
+  // Speaker aim assist. Each camera frame sets a goal heading on the field, from where the robot
+  // was pointing when the frame was captured, and the odometry heading is driven to it between
+  // frames. Chasing tx directly would chase an angle that is a frame old.
+  private final LimelightSubsystem limelight;
+  private final Supplier<Boolean> aim;
+  private final ProfiledPIDController aimController =
+      new ProfiledPIDController(
+          DriveConstants.kAimP,
+          0,
+          DriveConstants.kAimD,
+          new TrapezoidProfile.Constraints(
+              DriveConstants.kAimMaxAngularSpeed, DriveConstants.kAimMaxAngularAcceleration));
+  private boolean aiming = false;
+  private boolean hasAimGoal = false;
+  private boolean aligned = false;
+  private double aimGoal; // radians, field heading
+  private double aimStartTime;
+  private double lastFrame = 0;
+
+  public TeleopCmd(
+      DrivetrainSubsystem drives,
+      LimelightSubsystem limelight,
+      Supplier<Boolean> fieldOrient,
+      Supplier<Boolean> aim) {
     driveSub = drives;
+    this.limelight = limelight;
     this.fieldOrient = fieldOrient;
+    this.aim = aim;
+    aimController.enableContinuousInput(-Math.PI, Math.PI);
     addRequirements(driveSub);
     // Use addRequirements() here to declare subsystem dependencies.
   }
@@ -61,6 +92,17 @@ public class TeleopCmd extends Command {
         speedDrive = DriveConstants.kMaxSpeedMetersPerSecond;
         speedTurn = DriveConstants.kMaxAngularSpeed;
     }
+    if (aim.get()) {
+      double aimRotate = aimAtSpeaker();
+      if (!Double.isNaN(aimRotate)) {
+        // Aiming is always field oriented, the driver keeps control of where the robot goes
+        driveSub.fieldDriveTurning(ContY, ContX, aimRotate, speedTurn, speedDrive);
+        return;
+      }
+    } else {
+      aiming = false;
+    }
+
     if (!fieldOrient.get()) {
       driveSub.fieldDrive(ContY, ContX, ContRotate, speedTurn, speedDrive);
     } else {
@@ -68,9 +110,52 @@ public class TeleopCmd extends Command {
     }
   }
 
+  /**
+   * Turns toward the speaker tag.
+   *
+   * @return Turn rate in radians per second, or NaN until a speaker tag has been seen
+   */
+  private double aimAtSpeaker() {
+    double heading = driveSub.getFieldPose().getRotation().getRadians();
+    if (!aiming) {
+      aiming = true;
+      hasAimGoal = false;
+      aligned = false;
+      aimStartTime = Timer.getFPGATimestamp();
+      aimController.reset(heading, Math.toRadians(driveSub.getTurnRate()));
+    }
+
+    double frame = limelight.getFrameTimestamp();
+    if (frame != lastFrame && limelight.hasTarget() && limelight.isSpeakerTag()) {
+      lastFrame = frame;
+      double captureTime = frame - limelight.getLatencyMillis() * 1e-3;
+      double headingAtCapture = driveSub.getFieldPoseAt(captureTime).getRotation().getRadians();
+      // tx is positive to the right, which is a clockwise turn
+      aimGoal =
+          MathUtil.angleModulus(headingAtCapture - Math.toRadians(limelight.getAprilTagX()));
+      hasAimGoal = true;
+    }
+    if (!hasAimGoal) {
+      return Double.NaN;
+    }
+
+    double rotate =
+        aimController.calculate(heading, aimGoal) + aimController.getSetpoint().velocity;
+    if (!aligned
+        && Math.abs(MathUtil.angleModulus(aimGoal - heading))
+            <= DriveConstants.kAimToleranceRadians) {
+      aligned = true;
+      double timeToAligned = Timer.getFPGATimestamp() - aimStartTime;
+      SmartDashboard.putNumber("Aim Time To Aligned (s)", timeToAligned);
+    }
+    return rotate;
+  }
+
   // Called once the command ends or is interrupted.
   @Override
-  public void end(boolean interrupted) {}
+  public void end(boolean interrupted) {
+    aiming = false;
+  }
 
   // Returns true when the command should end.
   @Override
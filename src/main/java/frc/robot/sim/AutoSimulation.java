@@ -0,0 +1,247 @@
+package frc.robot.sim;
+
+import edu.wpi.first.hal.AllianceStationID;
+import edu.wpi.first.hal.HAL;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.simulation.DriverStationSim;
+import edu.wpi.first.wpilibj.simulation.SimHooks;
+import edu.wpi.first.wpilibj2.command.Command;
+import edu.wpi.first.wpilibj2.command.CommandScheduler;
+import frc.robot.Constants.SimConstants;
+import frc.robot.Constants.TimerConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.RobotContainer;
+import frc.robot.auto.AutoChain;
+import frc.robot.auto.plans.BlueUNHFinal1242;
+import frc.robot.auto.plans.FourNoteAuto;
+import frc.robot.auto.plans.LeftSpeakerAuto;
+import frc.robot.auto.plans.MidTwoAuto;
+import frc.robot.auto.plans.OutsideTwoAuto;
+import frc.robot.auto.plans.RedUNHFinal1242;
+import frc.robot.auto.plans.RightSpeakerAuto;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs autos in simulation as fast as the computer can, run by the simulateAuto Gradle task and
+ * checked against limits in {@link SimConstants} by AutoSimulationTest.
+ *
+ * <p>The robot code runs unchanged with the simulated drivetrain, flywheels, notes and Limelight
+ * from {@link RobotSim}. Time is paused and stepped one 20 ms loop at a time, so the odometry
+ * thread and everything else timed sees the same clock the robot would, only faster. For each auto
+ * this prints how long it took, how far from where it should have ended the robot really is, and
+ * how many notes it scored.
+ *
+ * <p>Pass the keys of the autos in the auto selector to run only those, every auto runs otherwise.
+ * Each auto runs once, since its commands are built once with the robot.
+ */
+public final class AutoSimulation {
+  private static final double kLoopSeconds = 0.02;
+  // Loops disabled after placing the robot, for the odometry thread to catch up
+  private static final int kSettleLoops = 10;
+
+  /** An auto in the auto selector and where it starts on the field. */
+  static final class Plan {
+    final String key;
+    final String name;
+    final Pose2d start;
+    final boolean red;
+    final List<AutoChain> drives;
+
+    Plan(String key, String name, Pose2d start, boolean red, List<AutoChain> drives) {
+      this.key = key;
+      this.name = name;
+      this.start = start;
+      this.red = red;
+      this.drives = drives;
+    }
+
+    /** Returns where the robot should end up, each chain moves it by its first pose to its last. */
+    Pose2d getEnd() {
+      Pose2d pose = start;
+      for (AutoChain chain : drives) {
+        Pose2d initial = chain.getTrajectory().getInitialPose();
+        Pose2d end = chain.getEnd(chain.getPaths().size() - 1);
+        pose = pose.plus(new Transform2d(initial, end));
+      }
+      return pose;
+    }
+  }
+
+  /** How one run of an auto went. */
+  static final class Result {
+    boolean finished;
+    double seconds;
+    double wallMillis;
+    // From where the robot should have ended to where it really is
+    Transform2d error;
+    int scored;
+    int missed;
+  }
+
+  // Where each auto starts against the subwoofer, blue origin. FourNoteAuto and OutsideTwoAuto are
+  // built for the alliance override's default, red.
+  static List<Plan> plans() {
+    double length = VisionConstants.kFieldLengthMeters;
+    double width = VisionConstants.kFieldWidthMeters;
+    return List.of(
+        new Plan(
+            "1",
+            "MidTwoAuto",
+            new Pose2d(1.37, 5.55, Rotation2d.fromDegrees(0)),
+            false,
+            MidTwoAuto.drives()),
+        new Plan(
+            "2",
+            "LeftSpeakerAuto",
+            new Pose2d(0.71, 6.68, Rotation2d.fromDegrees(60)),
+            false,
+            LeftSpeakerAuto.drives()),
+        new Plan(
+            "3",
+            "RightSpeakerAuto",
+            new Pose2d(0.71, 4.42, Rotation2d.fromDegrees(-60)),
+            false,
+            RightSpeakerAuto.drives()),
+        new Plan(
+            "4",
+            "FourNoteAuto",
+            new Pose2d(length - 1.37, 5.55, Rotation2d.fromDegrees(180)),
+            true,
+            FourNoteAuto.drives(1)),
+        new Plan(
+            "5",
+            "OutsideTwoAuto",
+            new Pose2d(length - 0.71, width - 4.42, Rotation2d.fromDegrees(120)),
+            true,
+            OutsideTwoAuto.drives(1)),
+        new Plan(
+            "6",
+            "RedUNHFinal1242",
+            new Pose2d(length - 0.71, width - 4.42, Rotation2d.fromDegrees(120)),
+            true,
+            RedUNHFinal1242.drives()),
+        new Plan(
+            "7",
+            "BlueUNHFinal1242",
+            new Pose2d(0.71, 6.68, Rotation2d.fromDegrees(60)),
+            false,
+            BlueUNHFinal1242.drives()));
+  }
+
+  private AutoSimulation() {}
+
+  /**
+   * @param args Keys of the autos to run, or nothing for every auto
+   */
+  public static void main(String[] args) {
+    RobotContainer container = startRobot();
+
+    List<Plan> plans = new ArrayList<>();
+    for (Plan plan : plans()) {
+      if (args.length == 0 || List.of(args).contains(plan.key)) {
+        plans.add(plan);
+      }
+    }
+
+    int scored = 0;
+    int missed = 0;
+    double totalWallMillis = 0;
+    for (Plan plan : plans) {
+      Result result = run(container, plan, plan.start);
+      totalWallMillis += result.wallMillis;
+      System.out.printf(
+          "%s: %s in %.2f s (%.0f ms real), ended %.3f m and %.1f deg off, %d scored, %d missed%n",
+          plan.name,
+          result.finished ? "finished" : "ran out of time",
+          result.seconds,
+          result.wallMillis,
+          result.error.getTranslation().getNorm(),
+          Math.abs(result.error.getRotation().getDegrees()),
+          result.scored,
+          result.missed);
+      scored += result.scored;
+      missed += result.missed;
+    }
+    System.out.printf(
+        "%d autos, %d scored, %d missed, %.0f ms real%n",
+        plans.size(), scored, missed, totalWallMillis);
+
+    // The odometry thread and the HAL keep the JVM running
+    System.exit(0);
+  }
+
+  /**
+   * Starts the HAL with time paused and builds the robot, with its simulation, disabled in
+   * autonomous. Only call once, the HAL and the scheduler are shared by the whole JVM.
+   *
+   * @return The robot
+   */
+  static RobotContainer startRobot() {
+    if (!HAL.initialize(500, 0)) {
+      throw new IllegalStateException("Could not initialize the HAL");
+    }
+    SimHooks.pauseTiming();
+    DriverStationSim.setDsAttached(true);
+    DriverStationSim.setAutonomous(true);
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+
+    RobotContainer container = new RobotContainer();
+    container.simulationInit();
+    return container;
+  }
+
+  /**
+   * Puts the robot on the field and runs an auto until it finishes or the auto period ends. An
+   * auto can only be run once, its commands are built once with the robot.
+   *
+   * @param container The robot
+   * @param plan The auto to run
+   * @param start Where to put the robot, blue origin, the auto still expects to be at its start
+   * @return How it went
+   */
+  static Result run(RobotContainer container, Plan plan, Pose2d start) {
+    RobotSim sim = container.getSim();
+    CommandScheduler.getInstance().cancelAll();
+    DriverStationSim.setAllianceStationId(
+        plan.red ? AllianceStationID.Red1 : AllianceStationID.Blue1);
+    DriverStationSim.setEnabled(false);
+    DriverStationSim.notifyNewData();
+    sim.reset(start, true);
+    for (int i = 0; i < kSettleLoops; i++) {
+      step(container);
+    }
+
+    DriverStationSim.setEnabled(true);
+    DriverStationSim.notifyNewData();
+    Command auto = container.getAutonomousCommand(plan.key);
+    long wallStart = System.nanoTime();
+    auto.schedule();
+    double time = 0;
+    while (time < TimerConstants.AutoTimerLength && auto.isScheduled()) {
+      step(container);
+      time += kLoopSeconds;
+    }
+
+    Result result = new Result();
+    result.wallMillis = (System.nanoTime() - wallStart) * 1e-6;
+    result.finished = !auto.isScheduled();
+    result.seconds = time;
+    result.error = new Transform2d(plan.getEnd(), sim.getPose());
+    result.scored = sim.getNotesScored();
+    result.missed = sim.getShotsMissed();
+    return result;
+  }
+
+  // One robot loop, in the order TimedRobot runs it
+  private static void step(RobotContainer container) {
+    DriverStation.refreshData();
+    CommandScheduler.getInstance().run();
+    container.simulationPeriodic();
+    SimHooks.stepTiming(kLoopSeconds);
+  }
+}
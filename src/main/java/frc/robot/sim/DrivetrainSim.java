@@ -0,0 +1,160 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.wpilibj.RobotController;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.SimConstants;
+import frc.utils.NavXGyro;
+import frc.utils.SwerveModule;
+
+/**
+ * Moves the simulated robot around the field from its simulated swerve modules.
+ *
+ * <p>Time is cut into SPARK MAX loops of {@link SimConstants#kSparkLoopSeconds}, and each loop the
+ * modules are stepped, the chassis speeds that best fit their wheel velocities are found the same
+ * way the odometry does, and the robot's real pose is moved by them. The gyro is fed the real
+ * heading, so the odometry sees the same small errors between what the modules report and where
+ * the robot went as it would on the robot.
+ */
+public class DrivetrainSim {
+  private final SwerveModuleSim[] m_sims;
+  private final NavXGyro m_gyro;
+
+  // Sum of the squared module distances from the center, for fitting the turning speed
+  private final double m_radiusSquaredSum;
+
+  // The robot's real pose on the field, blue origin
+  private double m_x = 0;
+  private double m_y = 0;
+  private double m_heading = 0; // radians
+  private double m_omega = 0; // radians per second
+  // What the gyro reads, it does not know where the robot was placed
+  private double m_gyroAngle = 0; // degrees, continuous
+  // Time not stepped yet, less than one SPARK MAX loop
+  private double m_unstepped = 0;
+  // Fraction of the wheels' motion lost to slipping on the carpet
+  private double m_slip = 0;
+
+  /**
+   * Simulates the drivetrain's modules, each is given a {@link SwerveModuleSim} to drive in place
+   * of its SPARKS MAX.
+   *
+   * @param modules The drivetrain's modules, in the same order as the kinematics
+   * @param gyro The drivetrain's gyro
+   */
+  public DrivetrainSim(SwerveModule[] modules, NavXGyro gyro) {
+    this(simsOf(modules), gyro);
+  }
+
+  /**
+   * Simulates modules on their own, without the robot code or the HAL.
+   *
+   * @param modules Simulated modules, in the same order as the kinematics
+   * @param gyro Gyro to feed, or null for none
+   */
+  public DrivetrainSim(SwerveModuleSim[] modules, NavXGyro gyro) {
+    m_sims = modules;
+    m_gyro = gyro;
+    double sum = 0;
+    for (int i = 0; i < modules.length; i++) {
+      sum +=
+          DriveConstants.kModuleXMeters[i] * DriveConstants.kModuleXMeters[i]
+              + DriveConstants.kModuleYMeters[i] * DriveConstants.kModuleYMeters[i];
+    }
+    m_radiusSquaredSum = sum;
+  }
+
+  private static SwerveModuleSim[] simsOf(SwerveModule[] modules) {
+    SwerveModuleSim[] sims = new SwerveModuleSim[modules.length];
+    for (int i = 0; i < modules.length; i++) {
+      sims[i] = new SwerveModuleSim(modules[i].getChassisAngularOffset());
+      modules[i].setSim(sims[i]);
+    }
+    return sims;
+  }
+
+  /**
+   * Moves the robot forward in time.
+   *
+   * @param dt Seconds to step
+   */
+  public void update(double dt) {
+    update(dt, RobotController.getBatteryVoltage());
+  }
+
+  /**
+   * Moves the robot forward in time.
+   *
+   * @param dt Seconds to step
+   * @param batteryVolts Battery voltage the motor controllers see
+   */
+  public void update(double dt, double batteryVolts) {
+    double loop = SimConstants.kSparkLoopSeconds;
+    m_unstepped += dt;
+    while (m_unstepped >= loop) {
+      m_unstepped -= loop;
+      step(batteryVolts, loop);
+    }
+    if (m_gyro != null) {
+      m_gyro.simulate(m_gyroAngle, Math.toDegrees(m_omega));
+    }
+  }
+
+  // Steps every module one loop and moves the robot
+  private void step(double batteryVolts, double dt) {
+    double vx = 0;
+    double vy = 0;
+    double omega = 0;
+    for (int i = 0; i < m_sims.length; i++) {
+      m_sims[i].step(batteryVolts);
+      double angle = m_sims[i].getChassisAngle();
+      double speed = m_sims[i].getDriveVelocity();
+      double moduleVx = speed * Math.cos(angle);
+      double moduleVy = speed * Math.sin(angle);
+      vx += moduleVx;
+      vy += moduleVy;
+      // Each module's velocity is the chassis velocity plus omega cross its position
+      omega +=
+          DriveConstants.kModuleXMeters[i] * moduleVy - DriveConstants.kModuleYMeters[i] * moduleVx;
+    }
+    // The wheels slip, so the robot moves less than the encoders say
+    double grip = 1 - m_slip;
+    vx *= grip / m_sims.length;
+    vy *= grip / m_sims.length;
+    omega *= grip / m_radiusSquaredSum;
+
+    // Move along the heading halfway through the step, close enough to an arc for small steps
+    double heading = m_heading + omega * dt / 2;
+    m_x += (vx * Math.cos(heading) - vy * Math.sin(heading)) * dt;
+    m_y += (vx * Math.sin(heading) + vy * Math.cos(heading)) * dt;
+    m_heading += omega * dt;
+    m_gyroAngle += Math.toDegrees(omega * dt);
+    m_omega = omega;
+  }
+
+  /**
+   * Sets how much the wheels slip. The gyro still sees how far the robot really turned.
+   *
+   * @param fraction Fraction of the wheels' motion lost, 0 for none
+   */
+  public void setWheelSlip(double fraction) {
+    m_slip = fraction;
+  }
+
+  /** Returns where the robot really is on the field, blue origin. */
+  public Pose2d getPose() {
+    return new Pose2d(m_x, m_y, new Rotation2d(m_heading));
+  }
+
+  /**
+   * Picks the robot up and puts it down somewhere else. The gyro keeps counting from where it was.
+   *
+   * @param pose Where to put the robot, blue origin
+   */
+  public void setPose(Pose2d pose) {
+    m_x = pose.getX();
+    m_y = pose.getY();
+    m_heading = pose.getRotation().getRadians();
+  }
+}
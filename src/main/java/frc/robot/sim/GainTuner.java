@@ -0,0 +1,396 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.controller.HolonomicDriveController;
+import edu.wpi.first.math.controller.PIDController;
+import edu.wpi.first.math.controller.ProfiledPIDController;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
+import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.math.trajectory.Trajectory;
+import frc.robot.Constants.AutoConstants;
+import frc.robot.Constants.DriveConstants;
+import frc.robot.Constants.SimConstants;
+import frc.robot.auto.AutoChain;
+import frc.robot.auto.TrajectoryCache;
+import frc.robot.sim.AutoSimulation.Plan;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Searches for the trajectory following gains in {@link AutoConstants}, run by the tuneGains
+ * Gradle task.
+ *
+ * <p>Every leg of every auto is followed the way {@code AutoFollowCmd} follows it, by a
+ * holonomic drive controller with the candidate gains, on four {@link SwerveModuleSim}s stepped by
+ * a {@link DrivetrainSim}. Nothing else of the robot is simulated and the HAL is not used, so
+ * candidates are scored in parallel in one JVM. A candidate's score adds up, over every leg, its
+ * RMS distance and heading from the trajectory and how long after the trajectory ends the robot
+ * takes to settle within shooting tolerance of the leg's end, weighted by the tuner constants in
+ * {@link SimConstants}.
+ *
+ * <p>Three searches are available: a grid over the ranges in {@link SimConstants}, uniform random
+ * candidates, and a CMA-style evolution strategy. The last samples each generation around a mean
+ * that starts at the current gains and moves to the weighted best half of the generation, with the
+ * spread of each gain shrinking towards the spread of the best half. It only keeps a spread per
+ * gain, not a full covariance matrix or evolution paths, which is enough for four gains. The best
+ * gains found are printed with how they do on each auto next to the current gains.
+ */
+public final class GainTuner {
+  // Layout of a candidate's gains
+  private static final int kPX = 0;
+  private static final int kPY = 1;
+  private static final int kPTheta = 2;
+  private static final int kI = 3;
+  private static final int kGainCount = 4;
+
+  private static final double kLoopSeconds = 0.02;
+  // Candidates per generation of the CMA-style search, and how fast its spread follows the best
+  private static final int kPopulation = 16;
+  private static final double kSpreadLearningRate = 0.5;
+
+  private final List<Plan> m_plans = AutoSimulation.plans();
+  private final ForkJoinPool m_pool;
+
+  /** How a candidate did on every auto. */
+  private static final class Score {
+    final double[] gains;
+    double total = 0;
+    // By auto, in the order of the plans
+    final double[] rmsMeters;
+    final double[] maxMeters;
+    final double[] lateSeconds;
+
+    Score(double[] gains, int plans) {
+      this.gains = gains;
+      rmsMeters = new double[plans];
+      maxMeters = new double[plans];
+      lateSeconds = new double[plans];
+    }
+  }
+
+  /** How following one chain went. */
+  private static final class Leg {
+    double rmsMeters;
+    double maxMeters;
+    double rmsRadians;
+    // Seconds after the trajectory ends until the robot is within shooting tolerance
+    double lateSeconds;
+    int loops;
+  }
+
+  private GainTuner(int threads) {
+    m_pool = new ForkJoinPool(threads);
+    // Load every trajectory now, chains load them lazily and are not thread safe until they have
+    for (Plan plan : m_plans) {
+      for (AutoChain chain : plan.drives) {
+        chain.getTrajectory();
+      }
+    }
+  }
+
+  /**
+   * @param args The search, grid, random or cma; the number of candidates to try for random and
+   *     cma; and the number of threads
+   */
+  public static void main(String[] args) throws InterruptedException, ExecutionException {
+    String search = args.length > 0 ? args[0] : "cma";
+    int budget = args.length > 1 ? Integer.parseInt(args[1]) : SimConstants.kTunerBudget;
+    int threads =
+        args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+    TrajectoryCache.useFile(new File("src/main/deploy", TrajectoryCache.kFileName));
+    GainTuner tuner = new GainTuner(threads);
+    try {
+      long start = System.nanoTime();
+      Score current =
+          tuner.score(
+              new double[] {
+                AutoConstants.kPXController,
+                AutoConstants.kPYController,
+                AutoConstants.kPThetaController,
+                AutoConstants.kIController
+              });
+      List<Score> scores;
+      switch (search) {
+        case "grid":
+          scores = tuner.grid();
+          break;
+        case "random":
+          scores = tuner.random(budget);
+          break;
+        case "cma":
+          scores = tuner.cma(budget);
+          break;
+        default:
+          throw new IllegalArgumentException(
+              "Unknown search " + search + ", use grid, random or cma");
+      }
+      scores.sort(Comparator.comparingDouble(score -> score.total));
+      double seconds = (System.nanoTime() - start) * 1e-9;
+      tuner.report(search, scores, current, seconds);
+    } finally {
+      tuner.m_pool.shutdown();
+    }
+  }
+
+  private List<Score> grid() throws InterruptedException, ExecutionException {
+    int steps = SimConstants.kTunerGridSteps;
+    List<double[]> candidates = new ArrayList<>();
+    int count = (int) Math.pow(steps, kGainCount);
+    for (int n = 0; n < count; n++) {
+      double[] gains = new double[kGainCount];
+      int index = n;
+      for (int i = 0; i < kGainCount; i++) {
+        double t = (double) (index % steps) / (steps - 1);
+        index /= steps;
+        gains[i] = lerp(i, t);
+      }
+      candidates.add(gains);
+    }
+    return scoreAll(candidates);
+  }
+
+  private List<Score> random(int budget) throws InterruptedException, ExecutionException {
+    Random random = new Random(SimConstants.kSeed);
+    List<double[]> candidates = new ArrayList<>();
+    for (int n = 0; n < budget; n++) {
+      double[] gains = new double[kGainCount];
+      for (int i = 0; i < kGainCount; i++) {
+        gains[i] = lerp(i, random.nextDouble());
+      }
+      candidates.add(gains);
+    }
+    return scoreAll(candidates);
+  }
+
+  private List<Score> cma(int budget) throws InterruptedException, ExecutionException {
+    Random random = new Random(SimConstants.kSeed);
+    // Searched in each gain's range scaled to 0 to 1, starting from the current gains
+    double[] mean = {
+      unlerp(kPX, AutoConstants.kPXController),
+      unlerp(kPY, AutoConstants.kPYController),
+      unlerp(kPTheta, AutoConstants.kPThetaController),
+      unlerp(kI, AutoConstants.kIController)
+    };
+    double[] spread = new double[kGainCount];
+    Arrays.fill(spread, 0.25);
+
+    // Log weights for the best half, the best counting the most
+    int parents = kPopulation / 2;
+    double[] weights = new double[parents];
+    double weightSum = 0;
+    for (int k = 0; k < parents; k++) {
+      weights[k] = Math.log(parents + 0.5) - Math.log(k + 1);
+      weightSum += weights[k];
+    }
+    for (int k = 0; k < parents; k++) {
+      weights[k] /= weightSum;
+    }
+
+    List<Score> scores = new ArrayList<>();
+    for (int generation = 0; generation < budget / kPopulation; generation++) {
+      List<double[]> candidates = new ArrayList<>();
+      for (int n = 0; n < kPopulation; n++) {
+        double[] gains = new double[kGainCount];
+        for (int i = 0; i < kGainCount; i++) {
+          gains[i] = lerp(i, MathUtil.clamp(mean[i] + spread[i] * random.nextGaussian(), 0, 1));
+        }
+        candidates.add(gains);
+      }
+      List<Score> population = scoreAll(candidates);
+      population.sort(Comparator.comparingDouble(score -> score.total));
+      scores.addAll(population);
+
+      double[] newMean = new double[kGainCount];
+      double[] variance = new double[kGainCount];
+      for (int k = 0; k < parents; k++) {
+        double[] gains = population.get(k).gains;
+        for (int i = 0; i < kGainCount; i++) {
+          double x = unlerp(i, gains[i]);
+          newMean[i] += weights[k] * x;
+          variance[i] += weights[k] * (x - mean[i]) * (x - mean[i]);
+        }
+      }
+      for (int i = 0; i < kGainCount; i++) {
+        spread[i] =
+            (1 - kSpreadLearningRate) * spread[i] + kSpreadLearningRate * Math.sqrt(variance[i]);
+      }
+      mean = newMean;
+    }
+    return scores;
+  }
+
+  // A gain a fraction t of the way across its range
+  private static double lerp(int gain, double t) {
+    return SimConstants.kTunerMinGains[gain]
+        + t * (SimConstants.kTunerMaxGains[gain] - SimConstants.kTunerMinGains[gain]);
+  }
+
+  // How far across its range a gain is, from 0 to 1
+  private static double unlerp(int gain, double value) {
+    return (value - SimConstants.kTunerMinGains[gain])
+        / (SimConstants.kTunerMaxGains[gain] - SimConstants.kTunerMinGains[gain]);
+  }
+
+  private List<Score> scoreAll(List<double[]> candidates)
+      throws InterruptedException, ExecutionException {
+    return m_pool
+        .submit(
+            () -> candidates.parallelStream().map(this::score).collect(Collectors.toList()))
+        .get();
+  }
+
+  private Score score(double[] gains) {
+    Score score = new Score(gains, m_plans.size());
+    for (int p = 0; p < m_plans.size(); p++) {
+      double squaredSum = 0;
+      int samples = 0;
+      for (AutoChain chain : m_plans.get(p).drives) {
+        Leg leg = follow(chain, gains);
+        squaredSum += leg.rmsMeters * leg.rmsMeters * leg.loops;
+        samples += leg.loops;
+        score.maxMeters[p] = Math.max(score.maxMeters[p], leg.maxMeters);
+        score.lateSeconds[p] += leg.lateSeconds;
+        score.total +=
+            SimConstants.kTunerErrorWeight * leg.rmsMeters
+                + SimConstants.kTunerHeadingWeight * leg.rmsRadians
+                + SimConstants.kTunerLateWeight * leg.lateSeconds;
+      }
+      score.rmsMeters[p] = Math.sqrt(squaredSum / samples);
+    }
+    return score;
+  }
+
+  // Follows one chain from its start with a set of gains, until settled at its end or timed out
+  private static Leg follow(AutoChain chain, double[] gains) {
+    PIDController xController = new PIDController(gains[kPX], gains[kI], 0);
+    PIDController yController = new PIDController(gains[kPY], gains[kI], 0);
+    ProfiledPIDController thetaController =
+        new ProfiledPIDController(
+            gains[kPTheta], gains[kI], 0, AutoConstants.kThetaControllerConstraints);
+    thetaController.enableContinuousInput(-Math.PI, Math.PI);
+    HolonomicDriveController controller =
+        new HolonomicDriveController(xController, yController, thetaController);
+
+    SwerveModuleSim[] modules = new SwerveModuleSim[DriveConstants.kModuleXMeters.length];
+    for (int i = 0; i < modules.length; i++) {
+      modules[i] = new SwerveModuleSim(0);
+    }
+    DrivetrainSim drivetrain = new DrivetrainSim(modules, null);
+
+    Trajectory trajectory = chain.getTrajectory();
+    drivetrain.setPose(trajectory.getInitialPose());
+    Pose2d end = chain.getEnd(chain.getPaths().size() - 1);
+    double total = trajectory.getTotalTimeSeconds();
+    double timeout = total + AutoConstants.kMarkerTimeoutSeconds;
+
+    double squaredSum = 0;
+    double headingSquaredSum = 0;
+    double max = 0;
+    int loops = 0;
+    double time = 0;
+    while (true) {
+      Pose2d pose = drivetrain.getPose();
+      Trajectory.State desired = trajectory.sample(time);
+      Rotation2d heading = chain.getRotation(time);
+      double error = pose.getTranslation().getDistance(desired.poseMeters.getTranslation());
+      double headingError =
+          MathUtil.angleModulus(pose.getRotation().getRadians() - heading.getRadians());
+      squaredSum += error * error;
+      headingSquaredSum += headingError * headingError;
+      max = Math.max(max, error);
+      loops++;
+
+      if (time >= total) {
+        double endHeadingError =
+            MathUtil.angleModulus(
+                pose.getRotation().getRadians() - end.getRotation().getRadians());
+        boolean settled =
+            pose.getTranslation().getDistance(end.getTranslation())
+                    <= AutoConstants.kShotToleranceMeters
+                && Math.abs(endHeadingError) <= AutoConstants.kMarkerHeadingToleranceRadians;
+        if (settled || time >= timeout) {
+          break;
+        }
+      }
+
+      ChassisSpeeds speeds = controller.calculate(pose, desired, heading);
+      SwerveModuleState[] states = DriveConstants.kDriveKinematics.toSwerveModuleStates(speeds);
+      SwerveDriveKinematics.desaturateWheelSpeeds(
+          states, DriveConstants.kMaxSpeedMetersPerSecond);
+      for (int i = 0; i < modules.length; i++) {
+        setDesiredState(modules[i], states[i]);
+      }
+      drivetrain.update(kLoopSeconds, SimConstants.kTunerBatteryVolts);
+      time += kLoopSeconds;
+    }
+    Leg leg = new Leg();
+    leg.rmsMeters = Math.sqrt(squaredSum / loops);
+    leg.maxMeters = max;
+    leg.rmsRadians = Math.sqrt(headingSquaredSum / loops);
+    leg.lateSeconds = time - total;
+    leg.loops = loops;
+    return leg;
+  }
+
+  // What SwerveModule.setDesiredState() does, for a module with no offset
+  private static void setDesiredState(SwerveModuleSim module, SwerveModuleState state) {
+    double speed = state.speedMetersPerSecond;
+    double angle = state.angle.getRadians();
+    if (Math.abs(MathUtil.angleModulus(angle - module.getChassisAngle())) > Math.PI / 2) {
+      speed = -speed;
+      angle += Math.PI;
+    }
+    module.setDriveSetpoint(speed);
+    module.setTurnSetpoint(MathUtil.angleModulus(angle));
+  }
+
+  private void report(String search, List<Score> scores, Score current, double seconds) {
+    Score best = scores.get(0);
+    System.out.printf(
+        "%s search: %d candidates on %d threads in %.0f s%n",
+        search, scores.size(), m_pool.getParallelism(), seconds);
+
+    System.out.println("Best candidates (score, kPX, kPY, kPTheta, kI):");
+    for (int n = 0; n < Math.min(5, scores.size()); n++) {
+      Score score = scores.get(n);
+      System.out.printf(
+          "  %8.3f  %6.2f %6.2f %6.2f %6.3f%n",
+          score.total, score.gains[kPX], score.gains[kPY], score.gains[kPTheta], score.gains[kI]);
+    }
+
+    System.out.printf("Score %.3f now, %.3f with the best gains%n", current.total, best.total);
+    System.out.printf(
+        "  %-18s %21s %21s %21s%n", "", "RMS error (m)", "max error (m)", "settling (s)");
+    System.out.printf(
+        "  %-18s %10s %10s %10s %10s %10s %10s%n", "", "now", "best", "now", "best", "now", "best");
+    for (int p = 0; p < m_plans.size(); p++) {
+      System.out.printf(
+          "  %-18s %10.3f %10.3f %10.3f %10.3f %10.3f %10.3f%n",
+          m_plans.get(p).name,
+          current.rmsMeters[p],
+          best.rmsMeters[p],
+          current.maxMeters[p],
+          best.maxMeters[p],
+          current.lateSeconds[p],
+          best.lateSeconds[p]);
+    }
+
+    System.out.println("In AutoConstants:");
+    System.out.printf("    public static final double kPXController = %.2f;%n", best.gains[kPX]);
+    System.out.printf("    public static final double kPYController = %.2f;%n", best.gains[kPY]);
+    System.out.printf(
+        "    public static final double kPThetaController = %.2f;%n", best.gains[kPTheta]);
+    System.out.printf("    public static final double kIController = %.3f;%n", best.gains[kI]);
+  }
+}
@@ -0,0 +1,292 @@
+package frc.robot.sim;
+
+import edu.wpi.first.apriltag.AprilTag;
+import edu.wpi.first.apriltag.AprilTagFieldLayout;
+import edu.wpi.first.apriltag.AprilTagFields;
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Pose3d;
+import edu.wpi.first.networktables.DoubleArrayPublisher;
+import edu.wpi.first.networktables.DoublePublisher;
+import edu.wpi.first.networktables.NetworkTable;
+import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.SimConstants;
+import frc.robot.Constants.VisionConstants;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Stands in for the Limelight in desktop simulation.
+ *
+ * <p>Each frame the camera is placed on the field at the simulated robot pose, and every tag in the
+ * 2024 layout that would be in view is projected into it. The largest tag becomes the target, and
+ * the target and bot pose are published to the "limelight" table under the same names the camera
+ * uses, so {@code LimelightSubsystem}, vision fusion and aim assist run unchanged. Frames are
+ * captured at a set rate and published their latency later, with noise on the angles and pose, and
+ * some frames can be dropped.
+ *
+ * <p>Call {@link #update()} every loop. A frame is published on the first update after it is due,
+ * but is stamped with the time it was due, so the latency the robot sees is the one set here.
+ */
+public class LimelightSim {
+  // Frames captured but not published yet, a frame's latency is well under this many frames
+  private static final int kMaxPending = 8;
+  // Publish every value every frame, even unchanged, with the frame's time like the Limelight does
+  private static final PubSubOption kEveryFrame = PubSubOption.keepDuplicates(true);
+  // Time between writing one value of a frame and the next
+  private static final long kWriteMicros = 100;
+
+  private final Supplier<Pose2d> m_poseSupplier;
+  private final List<AprilTag> m_tags;
+  private final Random m_random;
+  private final double m_minFacing = Math.cos(SimConstants.kCameraMaxViewAngleRadians);
+
+  // Settings
+  private double m_framePeriod = 1 / SimConstants.kCameraFps;
+  private double m_pipelineMillis = SimConstants.kCameraPipelineMillis;
+  private double m_captureMillis = SimConstants.kCameraCaptureMillis;
+  private double m_noiseMeters = SimConstants.kCameraNoiseMeters;
+  private double m_noiseDegrees = SimConstants.kCameraNoiseDegrees;
+  private double m_dropoutChance = SimConstants.kCameraDropoutChance;
+
+  private final DoublePublisher m_heartbeat;
+  private final DoublePublisher m_tx;
+  private final DoublePublisher m_ty;
+  private final DoublePublisher m_ta;
+  private final DoublePublisher m_tv;
+  private final DoublePublisher m_tid;
+  private final DoublePublisher m_tl;
+  private final DoublePublisher m_cl;
+  private final DoubleArrayPublisher m_botpose;
+  private final DoubleArrayPublisher m_botposeBlue;
+  private final DoubleArrayPublisher m_botposeRed;
+  private final DoubleArrayPublisher m_targetpose;
+
+  // Ring of captured frames, reused so a frame never allocates its arrays
+  private final Frame[] m_pending = new Frame[kMaxPending];
+  private int m_pendingStart = 0;
+  private int m_pendingCount = 0;
+  private double m_nextCapture = 0;
+  private long m_heartbeats = 0;
+  private final double[] m_botposeOut = new double[VisionConstants.kBotPoseLength];
+
+  private static class Frame {
+    double publishTime;
+    double tx;
+    double ty;
+    double ta;
+    double tid;
+    final double[] botpose = new double[VisionConstants.kBotPoseLength];
+    final double[] targetpose = new double[6];
+  }
+
+  /**
+   * Creates the stand-in with the settings in {@link SimConstants}.
+   *
+   * @param poseSupplier Where the robot really is on the field, blue origin
+   * @param seed Seed for the noise and dropouts, the same seed gives the same frames
+   */
+  public LimelightSim(Supplier<Pose2d> poseSupplier, long seed) {
+    m_poseSupplier = poseSupplier;
+    AprilTagFieldLayout layout = AprilTagFields.k2024Crescendo.loadAprilTagLayoutField();
+    m_tags = layout.getTags();
+    m_random = new Random(seed);
+    for (int i = 0; i < kMaxPending; i++) {
+      m_pending[i] = new Frame();
+    }
+
+    NetworkTable table = NetworkTableInstance.getDefault().getTable("limelight");
+    m_heartbeat = table.getDoubleTopic("hb").publish(kEveryFrame);
+    m_tx = table.getDoubleTopic("tx").publish(kEveryFrame);
+    m_ty = table.getDoubleTopic("ty").publish(kEveryFrame);
+    m_ta = table.getDoubleTopic("ta").publish(kEveryFrame);
+    m_tv = table.getDoubleTopic("tv").publish(kEveryFrame);
+    m_tid = table.getDoubleTopic("tid").publish(kEveryFrame);
+    m_tl = table.getDoubleTopic("tl").publish(kEveryFrame);
+    m_cl = table.getDoubleTopic("cl").publish(kEveryFrame);
+    m_botpose = table.getDoubleArrayTopic("botpose").publish(kEveryFrame);
+    m_botposeBlue = table.getDoubleArrayTopic("botpose_wpiblue").publish(kEveryFrame);
+    m_botposeRed = table.getDoubleArrayTopic("botpose_wpired").publish(kEveryFrame);
+    m_targetpose = table.getDoubleArrayTopic("targetpose_robotspace").publish(kEveryFrame);
+  }
+
+  public void setFrameRate(double fps) {
+    m_framePeriod = 1 / fps;
+  }
+
+  /**
+   * Sets how long it takes a frame to reach the robot.
+   *
+   * @param pipelineMillis Time to process the image (tl)
+   * @param captureMillis Time from the image being taken to processing starting (cl)
+   */
+  public void setLatency(double pipelineMillis, double captureMillis) {
+    m_pipelineMillis = pipelineMillis;
+    m_captureMillis = captureMillis;
+  }
+
+  /**
+   * Sets the noise on each frame.
+   *
+   * @param meters Standard deviation of the bot pose position from one tag one meter away, grows
+   *     with distance squared and shrinks with more tags like the real camera
+   * @param degrees Standard deviation of tx and ty, and of the bot pose heading the same way
+   */
+  public void setNoise(double meters, double degrees) {
+    m_noiseMeters = meters;
+    m_noiseDegrees = degrees;
+  }
+
+  /** Restarts the noise and dropouts from a new seed. */
+  public void setSeed(long seed) {
+    m_random.setSeed(seed);
+  }
+
+  /** Sets the chance from 0 to 1 that a frame is lost and never published. */
+  public void setDropoutChance(double chance) {
+    m_dropoutChance = chance;
+  }
+
+  /** Captures a frame if one is due and publishes any frames whose latency has passed. */
+  public void update() {
+    double now = Timer.getFPGATimestamp();
+    if (now >= m_nextCapture) {
+      // Skip frames that were missed rather than capturing them all at once
+      m_nextCapture = Math.max(m_nextCapture + m_framePeriod, now);
+      if (m_random.nextDouble() >= m_dropoutChance && m_pendingCount < kMaxPending) {
+        Frame frame = m_pending[(m_pendingStart + m_pendingCount) % kMaxPending];
+        capture(m_poseSupplier.get(), now, frame);
+        m_pendingCount++;
+      }
+    }
+
+    while (m_pendingCount > 0 && m_pending[m_pendingStart].publishTime <= now) {
+      publish(m_pending[m_pendingStart]);
+      m_pendingStart = (m_pendingStart + 1) % kMaxPending;
+      m_pendingCount--;
+    }
+  }
+
+  private void capture(Pose2d robot, double now, Frame frame) {
+    Pose3d robotPose = new Pose3d(robot);
+    Pose3d camera = robotPose.transformBy(SimConstants.kRobotToCamera);
+    double halfWidth = SimConstants.kCameraHorizontalFovRadians / 2;
+    double halfHeight = SimConstants.kCameraVerticalFovRadians / 2;
+    double fovArea =
+        SimConstants.kCameraHorizontalFovRadians * SimConstants.kCameraVerticalFovRadians;
+
+    AprilTag target = null;
+    int count = 0;
+    double distanceSum = 0;
+    double areaSum = 0;
+    frame.ta = 0;
+    for (AprilTag tag : m_tags) {
+      Pose3d inCamera = tag.pose.relativeTo(camera);
+      double x = inCamera.getX();
+      if (x <= 0) {
+        continue;
+      }
+      double yaw = Math.atan2(inCamera.getY(), x);
+      double pitch = Math.atan2(inCamera.getZ(), x);
+      double distance = inCamera.getTranslation().getNorm();
+      if (Math.abs(yaw) > halfWidth
+          || Math.abs(pitch) > halfHeight
+          || distance > SimConstants.kCameraMaxRangeMeters) {
+        continue;
+      }
+      // A tag faces out along its x axis, seen too far from straight on it cannot be decoded
+      double facing = camera.relativeTo(tag.pose).getX() / distance;
+      if (facing < m_minFacing) {
+        continue;
+      }
+
+      double size = SimConstants.kTagSizeMeters / distance;
+      double area = 100 * size * size * facing / fovArea;
+      count++;
+      distanceSum += distance;
+      areaSum += area;
+      if (area > frame.ta) {
+        target = tag;
+        frame.ta = area;
+        frame.tx = -Math.toDegrees(yaw) + m_random.nextGaussian() * m_noiseDegrees;
+        frame.ty = Math.toDegrees(pitch) + m_random.nextGaussian() * m_noiseDegrees;
+      }
+    }
+
+    double latencyMillis = m_pipelineMillis + m_captureMillis;
+    frame.publishTime = now + latencyMillis * 1e-3;
+    double[] botpose = frame.botpose;
+    for (int i = 0; i < botpose.length; i++) {
+      botpose[i] = 0;
+    }
+    botpose[VisionConstants.kBotPoseLatency] = latencyMillis;
+    if (target == null) {
+      frame.tx = 0;
+      frame.ty = 0;
+      frame.tid = -1;
+      for (int i = 0; i < frame.targetpose.length; i++) {
+        frame.targetpose[i] = 0;
+      }
+      return;
+    }
+    frame.tid = target.ID;
+
+    double distance = distanceSum / count;
+    double scale = distance * distance / count;
+    double noise = m_noiseMeters * scale;
+    botpose[VisionConstants.kBotPoseX] = robot.getX() + m_random.nextGaussian() * noise;
+    botpose[VisionConstants.kBotPoseY] = robot.getY() + m_random.nextGaussian() * noise;
+    botpose[VisionConstants.kBotPoseYaw] =
+        robot.getRotation().getDegrees() + m_random.nextGaussian() * m_noiseDegrees * scale;
+    botpose[VisionConstants.kBotPoseTagCount] = count;
+    botpose[VisionConstants.kBotPoseTagDistance] = distance;
+    botpose[VisionConstants.kBotPoseTagArea] = areaSum / count;
+
+    // In the robot's axes, x forward and y left
+    Pose3d inRobot = target.pose.relativeTo(robotPose);
+    frame.targetpose[0] = inRobot.getX();
+    frame.targetpose[1] = inRobot.getY();
+    frame.targetpose[2] = inRobot.getZ();
+    frame.targetpose[3] = Math.toDegrees(inRobot.getRotation().getX());
+    frame.targetpose[4] = Math.toDegrees(inRobot.getRotation().getY());
+    frame.targetpose[5] = Math.toDegrees(inRobot.getRotation().getZ());
+  }
+
+  // Each value is written on its own, a little after the one before, like the camera does, so the
+  // robot has to match a frame's values by time rather than exactly
+  private void publish(Frame frame) {
+    long time = (long) (frame.publishTime * 1e6);
+    boolean hasTarget = frame.tid >= 0;
+    m_tx.set(frame.tx, time);
+    m_ty.set(frame.ty, time += kWriteMicros);
+    m_ta.set(frame.ta, time += kWriteMicros);
+    m_tv.set(hasTarget ? 1 : 0, time += kWriteMicros);
+    m_tid.set(frame.tid, time += kWriteMicros);
+    m_tl.set(m_pipelineMillis, time += kWriteMicros);
+    m_cl.set(m_captureMillis, time += kWriteMicros);
+    m_botposeBlue.set(frame.botpose, time += kWriteMicros);
+    m_targetpose.set(frame.targetpose, time += kWriteMicros);
+
+    // The other origins are the same pose moved, from the field center and from the red corner
+    double[] out = m_botposeOut;
+    System.arraycopy(frame.botpose, 0, out, 0, out.length);
+    if (hasTarget) {
+      out[VisionConstants.kBotPoseX] -= VisionConstants.kFieldLengthMeters / 2;
+      out[VisionConstants.kBotPoseY] -= VisionConstants.kFieldWidthMeters / 2;
+    }
+    m_botpose.set(out, time += kWriteMicros);
+    if (hasTarget) {
+      out[VisionConstants.kBotPoseX] =
+          VisionConstants.kFieldLengthMeters - frame.botpose[VisionConstants.kBotPoseX];
+      out[VisionConstants.kBotPoseY] =
+          VisionConstants.kFieldWidthMeters - frame.botpose[VisionConstants.kBotPoseY];
+      out[VisionConstants.kBotPoseYaw] = frame.botpose[VisionConstants.kBotPoseYaw] + 180;
+    }
+    m_botposeRed.set(out, time += kWriteMicros);
+
+    // Last, the robot takes a frame when this changes
+    m_heartbeat.set(++m_heartbeats, time += kWriteMicros);
+  }
+}
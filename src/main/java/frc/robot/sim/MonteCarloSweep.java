@@ -0,0 +1,257 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.math.geometry.Transform2d;
+import edu.wpi.first.wpilibj.simulation.RoboRioSim;
+import frc.robot.Constants.SimConstants;
+import frc.robot.RobotContainer;
+import frc.robot.sim.AutoSimulation.Plan;
+import frc.robot.sim.AutoSimulation.Result;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Runs autos many times in simulation under randomly worse conditions, to find which autos hold
+ * up on the field. Run by the sweepAuto Gradle task.
+ *
+ * <p>Each run places the robot a little off its start pose, and draws the wheel slip, battery
+ * voltage, and the Limelight's noise, latency and dropped frames from the ranges in {@link
+ * SimConstants}. For each auto this prints the distributions of completion time, how far from its
+ * end pose the robot finished, and shots scored and missed.
+ *
+ * <p>The HAL and the command scheduler are shared by everything in a JVM, and an auto's commands
+ * can only be run once, so every run is its own simulation JVM. A fork-join pool keeps one run
+ * going per thread. Run {@code n} is seeded with {@code SimConstants.kSeed + n}, so a sweep can be
+ * repeated and any run can be run again on its own.
+ */
+public final class MonteCarloSweep {
+  // Makes a JVM do one run and print its result
+  private static final String kRunFlag = "--run";
+  private static final String kResultPrefix = "SWEEP_RESULT";
+
+  // Columns of a run's result
+  private static final int kFinished = 0;
+  private static final int kSeconds = 1;
+  private static final int kErrorMeters = 2;
+  private static final int kErrorDegrees = 3;
+  private static final int kScored = 4;
+  private static final int kMissed = 5;
+  private static final int kResultSize = 6;
+
+  private MonteCarloSweep() {}
+
+  /**
+   * @param args Keys of the autos in the auto selector separated by commas, the number of runs of
+   *     each and the number of threads; or {@code --run key seed} for a single run
+   */
+  public static void main(String[] args) throws InterruptedException, ExecutionException {
+    if (args.length == 3 && args[0].equals(kRunFlag)) {
+      runOnce(find(args[1]), Long.parseLong(args[2]));
+      return;
+    }
+
+    String[] keys = args.length > 0 ? args[0].split(",") : new String[] {"1"};
+    int runs = args.length > 1 ? Integer.parseInt(args[1]) : SimConstants.kSweepRuns;
+    int threads =
+        args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    ForkJoinPool pool = new ForkJoinPool(threads);
+    try {
+      for (String key : keys) {
+        Plan plan = find(key);
+        long start = System.nanoTime();
+        List<double[]> results =
+            pool.submit(
+                    () ->
+                        IntStream.range(0, runs)
+                            .parallel()
+                            .mapToObj(i -> launch(plan.key, SimConstants.kSeed + i))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList()))
+                .get();
+        double seconds = (System.nanoTime() - start) * 1e-9;
+        report(plan, runs, threads, seconds, results);
+      }
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  private static Plan find(String key) {
+    for (Plan plan : AutoSimulation.plans()) {
+      if (plan.key.equals(key.trim())) {
+        return plan;
+      }
+    }
+    throw new IllegalArgumentException("No auto with the key " + key);
+  }
+
+  // Runs an auto once in another JVM, null if it did not print a result
+  private static double[] launch(String key, long seed) {
+    List<String> command =
+        List.of(
+            Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+            "-cp",
+            System.getProperty("java.class.path"),
+            "-Djava.library.path=" + System.getProperty("java.library.path"),
+            MonteCarloSweep.class.getName(),
+            kRunFlag,
+            key,
+            Long.toString(seed));
+    try {
+      Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+      double[] result = null;
+      // Read everything, a child whose output is not read blocks once the pipe fills
+      try (BufferedReader reader =
+          new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          if (line.startsWith(kResultPrefix)) {
+            result = parse(line);
+          }
+        }
+      }
+      process.waitFor();
+      return result;
+    } catch (IOException e) {
+      return null;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    }
+  }
+
+  private static double[] parse(String line) {
+    String[] fields = line.trim().split(" ");
+    if (fields.length != kResultSize + 1) {
+      return null;
+    }
+    double[] result = new double[kResultSize];
+    for (int i = 0; i < kResultSize; i++) {
+      result[i] = Double.parseDouble(fields[i + 1]);
+    }
+    return result;
+  }
+
+  // One run in this JVM, prints its result for the sweep to read
+  private static void runOnce(Plan plan, long seed) {
+    Random random = new Random(seed);
+    RobotContainer container = AutoSimulation.startRobot();
+    RobotSim sim = container.getSim();
+
+    LimelightSim limelight = sim.getLimelight();
+    limelight.setSeed(random.nextLong());
+    double noise =
+        uniform(random, SimConstants.kSweepMinCameraNoise, SimConstants.kSweepMaxCameraNoise);
+    limelight.setNoise(
+        SimConstants.kCameraNoiseMeters * noise, SimConstants.kCameraNoiseDegrees * noise);
+    limelight.setLatency(
+        uniform(random, SimConstants.kCameraPipelineMillis, SimConstants.kSweepMaxPipelineMillis),
+        SimConstants.kCameraCaptureMillis);
+    limelight.setDropoutChance(uniform(random, 0, SimConstants.kSweepMaxDropoutChance));
+    sim.getDrivetrainSim().setWheelSlip(uniform(random, 0, SimConstants.kSweepMaxWheelSlip));
+    RoboRioSim.setVInVoltage(
+        uniform(random, SimConstants.kSweepMinBatteryVolts, SimConstants.kSweepMaxBatteryVolts));
+    Transform2d misplaced =
+        new Transform2d(
+            random.nextGaussian() * SimConstants.kSweepStartStdDevMeters,
+            random.nextGaussian() * SimConstants.kSweepStartStdDevMeters,
+            Rotation2d.fromDegrees(random.nextGaussian() * SimConstants.kSweepStartStdDevDegrees));
+    Pose2d start = plan.start.plus(misplaced);
+
+    Result result = AutoSimulation.run(container, plan, start);
+    System.out.printf(
+        Locale.ROOT,
+        "%s %d %.4f %.4f %.3f %d %d%n",
+        kResultPrefix,
+        result.finished ? 1 : 0,
+        result.seconds,
+        result.error.getTranslation().getNorm(),
+        Math.abs(result.error.getRotation().getDegrees()),
+        result.scored,
+        result.missed);
+    System.exit(0);
+  }
+
+  private static double uniform(Random random, double min, double max) {
+    return min + (max - min) * random.nextDouble();
+  }
+
+  private static void report(
+      Plan plan, int runs, int threads, double seconds, List<double[]> results) {
+    int count = results.size();
+    System.out.printf(
+        "%s: %d runs on %d threads in %.0f s, %d failed to run%n",
+        plan.name, runs, threads, seconds, runs - count);
+    if (count == 0) {
+      return;
+    }
+
+    System.out.printf(
+        "  finished in time %.1f%% of runs%n", 100.0 * sum(results, kFinished) / count);
+    System.out.printf("  %-19s %8s %8s %8s %8s %8s%n", "", "mean", "p5", "p50", "p95", "max");
+    printDistribution("time (s)", results, kSeconds);
+    printDistribution("pose error (m)", results, kErrorMeters);
+    printDistribution("heading error (deg)", results, kErrorDegrees);
+    printDistribution("scored", results, kScored);
+
+    // Shots missed are few and whole, so count how often each number happens
+    int maxMissed = (int) column(results, kMissed)[count - 1];
+    StringBuilder missed = new StringBuilder("  missed shots");
+    for (int n = 0; n <= maxMissed; n++) {
+      int times = 0;
+      for (double[] result : results) {
+        if ((int) result[kMissed] == n) {
+          times++;
+        }
+      }
+      missed.append(String.format("  %d: %.1f%%", n, 100.0 * times / count));
+    }
+    System.out.println(missed);
+  }
+
+  private static void printDistribution(String name, List<double[]> results, int index) {
+    double[] values = column(results, index);
+    System.out.printf(
+        "  %-19s %8.3f %8.3f %8.3f %8.3f %8.3f%n",
+        name,
+        sum(results, index) / values.length,
+        percentile(values, 0.05),
+        percentile(values, 0.5),
+        percentile(values, 0.95),
+        values[values.length - 1]);
+  }
+
+  // One column of the results, sorted
+  private static double[] column(List<double[]> results, int index) {
+    double[] values = new double[results.size()];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = results.get(i)[index];
+    }
+    Arrays.sort(values);
+    return values;
+  }
+
+  private static double sum(List<double[]> results, int index) {
+    double sum = 0;
+    for (double[] result : results) {
+      sum += result[index];
+    }
+    return sum;
+  }
+
+  private static double percentile(double[] sorted, double fraction) {
+    return sorted[(int) Math.round(fraction * (sorted.length - 1))];
+  }
+}
@@ -0,0 +1,177 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Timer;
+import frc.robot.Constants.SimConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.subsystems.DrivetrainSubsystem;
+import frc.robot.subsystems.FeederSubsystem;
+import frc.robot.subsystems.IntakeSubsystem;
+import frc.robot.subsystems.ShooterSubsystem;
+import java.util.Optional;
+
+/**
+ * Everything in simulation that is not inside one subsystem: the Limelight, and the notes on the
+ * field and in the robot.
+ *
+ * <p>The drivetrain and flywheels step themselves in their subsystems' simulationPeriodic(). This
+ * picks a note up when the intake is running with the front of the robot over one, moves it into
+ * the feeder while the feeder pulls in, and shoots it once the feeder pushes it into the shooter.
+ * A shot scores if both flywheels are up to speed and the robot is close enough to its speaker.
+ */
+public class RobotSim {
+  // 2024 notes, blue origin: blue wing, red wing, then the center line
+  private static final double[][] kNotePositions = {
+    {2.8956, 4.1050}, {2.8956, 5.5530}, {2.8956, 7.0010},
+    {13.6444, 4.1050}, {13.6444, 5.5530}, {13.6444, 7.0010},
+    {8.2704, 0.7528}, {8.2704, 2.4292}, {8.2704, 4.1056}, {8.2704, 5.7820}, {8.2704, 7.4584}
+  };
+  // Speaker openings, blue origin
+  private static final double kSpeakerY = 5.5479;
+  private static final double kBlueSpeakerX = 0;
+  private static final double kRedSpeakerX = VisionConstants.kFieldLengthMeters;
+
+  private final ShooterSubsystem m_shooter;
+  private final FeederSubsystem m_feeder;
+  private final IntakeSubsystem m_intake;
+  private final DrivetrainSubsystem m_drivetrain;
+  private final DrivetrainSim m_drivetrainSim;
+  private final LimelightSim m_limelight;
+
+  private final boolean[] m_notesOnField = new boolean[kNotePositions.length];
+  private boolean m_noteInIntake = false;
+  private boolean m_noteInFeeder = false;
+  private double m_noteMoving = 0; // seconds the note has been moving through the robot
+  private int m_scored = 0;
+  private int m_missed = 0;
+  private double m_lastTime = Timer.getFPGATimestamp();
+
+  /**
+   * Sets up the simulation with the robot at {@link SimConstants#kStartPose} holding a note.
+   *
+   * @param drivetrain The drivetrain, which must be simulating
+   * @param shooter The shooter
+   * @param feeder The feeder
+   * @param intake The intake
+   */
+  public RobotSim(
+      DrivetrainSubsystem drivetrain,
+      ShooterSubsystem shooter,
+      FeederSubsystem feeder,
+      IntakeSubsystem intake) {
+    m_drivetrain = drivetrain;
+    m_shooter = shooter;
+    m_feeder = feeder;
+    m_intake = intake;
+    m_drivetrainSim = drivetrain.getSim();
+    m_limelight = new LimelightSim(m_drivetrainSim::getPose, SimConstants.kSeed);
+    reset(SimConstants.kStartPose, true);
+  }
+
+  /**
+   * Puts the robot somewhere on the field and every note back where it starts.
+   *
+   * @param pose Where to put the robot, blue origin
+   * @param preloaded Whether the robot starts holding a note
+   */
+  public void reset(Pose2d pose, boolean preloaded) {
+    m_drivetrainSim.setPose(pose);
+    m_drivetrain.resetFieldPose(pose);
+    for (int i = 0; i < m_notesOnField.length; i++) {
+      m_notesOnField[i] = true;
+    }
+    m_noteInIntake = false;
+    m_noteInFeeder = preloaded;
+    m_noteMoving = 0;
+    m_scored = 0;
+    m_missed = 0;
+    m_feeder.simulateNote(preloaded);
+  }
+
+  /** Steps everything, call once a loop after the scheduler has run. */
+  public void update() {
+    double now = Timer.getFPGATimestamp();
+    double dt = now - m_lastTime;
+    m_lastTime = now;
+
+    m_limelight.update();
+    updateNotes(dt);
+  }
+
+  private void updateNotes(double dt) {
+    Pose2d pose = m_drivetrainSim.getPose();
+    if (!m_noteInIntake && !m_noteInFeeder && m_intake.isIntaking()) {
+      // The intake is across the front bumper
+      double x = pose.getX() + SimConstants.kIntakeReachMeters * pose.getRotation().getCos();
+      double y = pose.getY() + SimConstants.kIntakeReachMeters * pose.getRotation().getSin();
+      for (int i = 0; i < kNotePositions.length; i++) {
+        if (m_notesOnField[i]
+            && Math.hypot(kNotePositions[i][0] - x, kNotePositions[i][1] - y)
+                <= SimConstants.kNotePickupRadiusMeters) {
+          m_notesOnField[i] = false;
+          m_noteInIntake = true;
+          break;
+        }
+      }
+    }
+
+    if (m_noteInIntake && m_feeder.isFeedingIn()) {
+      m_noteMoving += dt;
+      if (m_noteMoving >= SimConstants.kNoteTransferSeconds) {
+        m_noteInIntake = false;
+        m_noteInFeeder = true;
+        m_noteMoving = 0;
+      }
+    } else if (m_noteInFeeder && m_feeder.isFeedingToShooter()) {
+      m_noteMoving += dt;
+      if (m_noteMoving >= SimConstants.kNoteFeedSeconds) {
+        shoot(pose);
+      }
+    } else {
+      m_noteMoving = 0;
+    }
+    m_feeder.simulateNote(m_noteInFeeder);
+  }
+
+  private void shoot(Pose2d pose) {
+    m_noteInFeeder = false;
+    m_noteMoving = 0;
+
+    Optional<Alliance> alliance = DriverStation.getAlliance();
+    double speakerX =
+        alliance.isPresent() && alliance.get() == Alliance.Red ? kRedSpeakerX : kBlueSpeakerX;
+    double distance = Math.hypot(pose.getX() - speakerX, pose.getY() - kSpeakerY);
+    if (m_shooter.getLeftRpm() >= SimConstants.kMinShotRpm
+        && m_shooter.getRightRpm() >= SimConstants.kMinShotRpm
+        && distance <= SimConstants.kMaxShotDistanceMeters) {
+      m_scored++;
+    } else {
+      m_missed++;
+    }
+  }
+
+  /** Returns where the robot really is on the field, blue origin. */
+  public Pose2d getPose() {
+    return m_drivetrainSim.getPose();
+  }
+
+  public DrivetrainSim getDrivetrainSim() {
+    return m_drivetrainSim;
+  }
+
+  public LimelightSim getLimelight() {
+    return m_limelight;
+  }
+
+  /** Returns how many notes went into the speaker since the last reset. */
+  public int getNotesScored() {
+    return m_scored;
+  }
+
+  /** Returns how many notes were shot and missed since the last reset. */
+  public int getShotsMissed() {
+    return m_missed;
+  }
+}
@@ -0,0 +1,194 @@
+package frc.robot.sim;
+
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.system.plant.DCMotor;
+import frc.robot.Constants.ModuleConstants;
+import frc.robot.Constants.SimConstants;
+import frc.utils.SwerveModule;
+
+/**
+ * A swerve module's motors and encoders in simulation.
+ *
+ * <p>Each motor is WPILib's model of a NEO or NEO 550 driving its gearbox and a load, the same
+ * model {@code DCMotorSim} uses. The SPARK MAX loops are run on them the way the controllers do:
+ * the driving velocity loop with its feedforward and the turning position loop wrapping around the
+ * absolute encoder, each output limited to the current limit, and both step at the controllers' 1
+ * kHz. A stopped motor is in brake mode, its windings shorted, so it slows down by itself. The
+ * encoders read in the same units as the real ones after their conversion factors, the turning
+ * angle being the absolute encoder's 0 to 2 pi.
+ *
+ * <p>{@code DCMotorSim} creates matrices every step, which is too slow for four modules stepped a
+ * thousand times a second, so the motor equation is solved here in closed form. Over a fixed step
+ * the speed moves towards the speed the voltage would hold by a fixed fraction, worked out once.
+ *
+ * <p>The readings are volatile because the odometry thread reads them while the main loop steps
+ * the module.
+ */
+public class SwerveModuleSim implements SwerveModule.Simulation {
+  private static final Motor kDrive =
+      new Motor(
+          DCMotor.getNEO(1),
+          ModuleConstants.kDrivingMotorReduction,
+          SimConstants.kDriveMomentKgMetersSquared,
+          ModuleConstants.kDrivingMotorCurrentLimit);
+  private static final Motor kTurn =
+      new Motor(
+          DCMotor.getNeo550(1),
+          SimConstants.kTurningMotorReduction,
+          SimConstants.kTurnMomentKgMetersSquared,
+          ModuleConstants.kTurningMotorCurrentLimit);
+  private static final double kWheelRadiusMeters = ModuleConstants.kWheelDiameterMeters / 2;
+
+  /**
+   * A motor turning a load through a gearbox, solved over {@link SimConstants#kSparkLoopSeconds}.
+   * Speeds are of the gearbox's output in radians per second.
+   */
+  private static final class Motor {
+    // Fraction of the speed left after a step with no voltage
+    final double decay;
+    // Speed the motor holds at one volt
+    final double speedPerVolt;
+    // Volts the motor generates per radian per second
+    final double backEmf;
+    // Volts that push the current limit through the windings
+    final double currentLimitVolts;
+
+    Motor(DCMotor motor, double reduction, double moment, double currentLimit) {
+      double dt = SimConstants.kSparkLoopSeconds;
+      // J dw/dt = G Kt (V - G w / Kv) / R
+      double rate =
+          reduction
+              * reduction
+              * motor.KtNMPerAmp
+              / (motor.KvRadPerSecPerVolt * motor.rOhms * moment);
+      decay = Math.exp(-rate * dt);
+      speedPerVolt = motor.KvRadPerSecPerVolt / reduction;
+      backEmf = 1 / speedPerVolt;
+      currentLimitVolts = currentLimit * motor.rOhms;
+    }
+
+    /** Returns the speed after one step from {@code speed} with {@code volts} applied. */
+    double step(double speed, double volts) {
+      // The SPARK MAX cuts its output back to hold the current at the limit
+      double emf = speed * backEmf;
+      volts = MathUtil.clamp(volts, emf - currentLimitVolts, emf + currentLimitVolts);
+      double target = volts * speedPerVolt;
+      return target + (speed - target) * decay;
+    }
+  }
+
+  // Setpoints, only used from the main loop
+  private double m_driveSetpoint = 0;
+  private double m_turnSetpoint;
+  private boolean m_driveEnabled = false;
+  private boolean m_turnEnabled = false;
+
+  // Absolute encoder reading with the wheel pointing forward
+  private final double m_chassisAngularOffset;
+
+  // Gearbox outputs, radians and radians per second
+  private double m_wheelSpeed = 0;
+  private double m_turnSpeed = 0;
+
+  // Encoder readings
+  private volatile double m_drivePosition = 0;
+  private volatile double m_driveVelocity = 0;
+  private volatile double m_turnAngle;
+
+  /**
+   * Creates a module with its wheel pointing forward.
+   *
+   * @param chassisAngularOffset Absolute encoder reading with the wheel pointing forward, radians
+   */
+  public SwerveModuleSim(double chassisAngularOffset) {
+    m_chassisAngularOffset = chassisAngularOffset;
+    m_turnAngle = MathUtil.inputModulus(chassisAngularOffset, 0, 2 * Math.PI);
+    m_turnSetpoint = m_turnAngle;
+  }
+
+  /** Runs the driving velocity loop, in meters per second. */
+  @Override
+  public void setDriveSetpoint(double speed) {
+    m_driveSetpoint = speed;
+    m_driveEnabled = true;
+  }
+
+  /** Runs the turning position loop, in radians of the absolute encoder. */
+  @Override
+  public void setTurnSetpoint(double angle) {
+    m_turnSetpoint = angle;
+    m_turnEnabled = true;
+  }
+
+  /** Stops both motors, in brake mode like the real modules. */
+  @Override
+  public void stop() {
+    m_driveEnabled = false;
+    m_turnEnabled = false;
+  }
+
+  /**
+   * Moves the module forward one SPARK MAX loop, {@link SimConstants#kSparkLoopSeconds}.
+   *
+   * @param batteryVolts Battery voltage the motor controllers see
+   */
+  public void step(double batteryVolts) {
+    double dt = SimConstants.kSparkLoopSeconds;
+
+    double driveOutput = 0;
+    if (m_driveEnabled) {
+      driveOutput =
+          ModuleConstants.kDrivingFF * m_driveSetpoint
+              + ModuleConstants.kDrivingP * (m_driveSetpoint - m_driveVelocity);
+    }
+    driveOutput =
+        MathUtil.clamp(
+            driveOutput, ModuleConstants.kDrivingMinOutput, ModuleConstants.kDrivingMaxOutput);
+    double wheelSpeed = kDrive.step(m_wheelSpeed, driveOutput * batteryVolts);
+    m_drivePosition += (m_wheelSpeed + wheelSpeed) / 2 * dt * kWheelRadiusMeters;
+    m_wheelSpeed = wheelSpeed;
+    m_driveVelocity = wheelSpeed * kWheelRadiusMeters;
+
+    double turnOutput = 0;
+    if (m_turnEnabled) {
+      // Position wrapping is on, so the loop turns the short way round
+      double error = MathUtil.angleModulus(m_turnSetpoint - m_turnAngle);
+      turnOutput = ModuleConstants.kTurningP * error;
+    }
+    turnOutput =
+        MathUtil.clamp(
+            turnOutput, ModuleConstants.kTurningMinOutput, ModuleConstants.kTurningMaxOutput);
+    double turnSpeed = kTurn.step(m_turnSpeed, turnOutput * batteryVolts);
+    m_turnAngle =
+        MathUtil.inputModulus(m_turnAngle + (m_turnSpeed + turnSpeed) / 2 * dt, 0, 2 * Math.PI);
+    m_turnSpeed = turnSpeed;
+  }
+
+  /** Returns the driving encoder position in meters. */
+  @Override
+  public double getDrivePosition() {
+    return m_drivePosition;
+  }
+
+  /** Returns the driving encoder velocity in meters per second. */
+  @Override
+  public double getDriveVelocity() {
+    return m_driveVelocity;
+  }
+
+  /** Returns the absolute turning encoder position in radians, 0 to 2 pi. */
+  @Override
+  public double getTurnAngle() {
+    return m_turnAngle;
+  }
+
+  /** Returns the module's angle relative to the chassis in radians, 0 pointing forward. */
+  public double getChassisAngle() {
+    return m_turnAngle - m_chassisAngularOffset;
+  }
+
+  @Override
+  public void resetDrivePosition() {
+    m_drivePosition = 0;
+  }
+}
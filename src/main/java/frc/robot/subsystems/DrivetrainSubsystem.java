@@ -4,53 +4,83 @@
 
 package frc.robot.subsystems;
 
-import com.kauailabs.navx.frc.AHRS;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.VecBuilder;
+import edu.wpi.first.math.estimator.SwerveDrivePoseEstimator;
 import edu.wpi.first.math.filter.SlewRateLimiter;
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
-import edu.wpi.first.math.kinematics.ChassisSpeeds;
+import edu.wpi.first.math.geometry.Transform2d;
 import edu.wpi.first.math.kinematics.SwerveDriveKinematics;
-import edu.wpi.first.math.kinematics.SwerveDriveOdometry;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
 import edu.wpi.first.util.WPIUtilJNI;
+import edu.wpi.first.wpilibj.RobotBase;
 import edu.wpi.first.wpilibj.SerialPort;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants.DriveConstants;
 import frc.robot.Constants.RobotConstants;
+import frc.robot.Constants.VisionConstants;
+import frc.robot.sim.DrivetrainSim;
+import frc.utils.DrivetrainInputs;
+import frc.utils.NavXGyro;
+import frc.utils.OdometryThread;
+import frc.utils.PoseHistory;
+import frc.utils.SparkConfigurator;
+import frc.utils.SparkStatusProfile;
 import frc.utils.SwerveModule;
 
 public class DrivetrainSubsystem extends SubsystemBase {
+  // Every sensor reading for the current loop, filled in at the start of periodic()
+  private final DrivetrainInputs m_inputs = new DrivetrainInputs();
+
   // Create SwerveModules
   private final SwerveModule m_frontLeft =
       new SwerveModule(
           RobotConstants.kFrontLeftDrivingCanId,
           RobotConstants.kFrontLeftTurningCanId,
-          RobotConstants.kFrontLeftChassisAngularOffset);
+          RobotConstants.kFrontLeftChassisAngularOffset,
+          m_inputs,
+          0);
 
   private final SwerveModule m_frontRight =
       new SwerveModule(
           RobotConstants.kFrontRightDrivingCanId,
           RobotConstants.kFrontRightTurningCanId,
-          RobotConstants.kFrontRightChassisAngularOffset);
+          RobotConstants.kFrontRightChassisAngularOffset,
+          m_inputs,
+          1);
 
   private final SwerveModule m_rearLeft =
       new SwerveModule(
           RobotConstants.kRearLeftDrivingCanId,
           RobotConstants.kRearLeftTurningCanId,
-          RobotConstants.kBackLeftChassisAngularOffset);
+          RobotConstants.kBackLeftChassisAngularOffset,
+          m_inputs,
+          2);
 
   private final SwerveModule m_rearRight =
       new SwerveModule(
           RobotConstants.kRearRightDrivingCanId,
           RobotConstants.kRearRightTurningCanId,
-          RobotConstants.kBackRightChassisAngularOffset);
+          RobotConstants.kBackRightChassisAngularOffset,
+          m_inputs,
+          3);
+
+  private final SwerveModule[] m_modules = {m_frontLeft, m_frontRight, m_rearLeft, m_rearRight};
+  // Reused by driveModules() every loop
+  private final double[] m_moduleSpeeds = new double[4];
+  private final double[] m_moduleAngles = new double[4];
 
   private final SendableChooser<String> m_chooser = new SendableChooser<>();
   // The gyro sensor
-  private AHRS m_gyro = new AHRS(SerialPort.Port.kUSB1);
+  private final NavXGyro m_gyro = new NavXGyro(SerialPort.Port.kUSB1, RobotConstants.kGyroReversed);
+  // Separate gyro samples for the main loop and the odometry thread
+  private final double[] m_gyroSample = new double[NavXGyro.kSampleSize];
+  private final double[] m_odometryGyroSample = new double[NavXGyro.kSampleSize];
 
   // Slew rate filter variables for controlling lateral acceleration
   private double m_currentRotation = 0.0;
@@ -70,9 +100,9 @@ public class DrivetrainSubsystem extends SubsystemBase {
   private SlewRateLimiter m_rotLimiter = new SlewRateLimiter(DriveConstants.kRotationalSlewRate);
   private double m_prevTime = WPIUtilJNI.now() * 1e-6;
 
-  // Odometry class for tracking robot pose
-  SwerveDriveOdometry m_odometry =
-      new SwerveDriveOdometry(
+  // Tracks the robot's pose on the field (blue origin) by fusing odometry with Limelight poses
+  SwerveDrivePoseEstimator m_poseEstimator =
+      new SwerveDrivePoseEstimator(
           DriveConstants.kDriveKinematics,
           Rotation2d.fromDegrees(getHeading()),
           new SwerveModulePosition[] {
@@ -80,10 +110,67 @@ public class DrivetrainSubsystem extends SubsystemBase {
             m_frontRight.getPosition(),
             m_rearLeft.getPosition(),
             m_rearRight.getPosition()
-          });
+          },
+          new Pose2d(),
+          VecBuilder.fill(
+              VisionConstants.kStateStdDevMeters,
+              VisionConstants.kStateStdDevMeters,
+              VisionConstants.kStateStdDevRadians),
+          VecBuilder.fill(
+              VisionConstants.kVisionStdDevMeters,
+              VisionConstants.kVisionStdDevMeters,
+              VisionConstants.kVisionStdDevRadians));
+
+  // The autos are planned relative to where the robot starts, so getPose() reports the field pose
+  // relative to this origin, which resetOdometry() moves instead of resetting the estimator
+  private Pose2d m_origin = new Pose2d();
+
+  // Field poses from the last couple of seconds, filled in on every odometry update
+  private final PoseHistory m_poseHistory = new PoseHistory(DriveConstants.kPoseHistoryCapacity);
+  private final double[] m_historyPose = new double[PoseHistory.kPoseSize];
+
+  private final LimelightSubsystem m_limelight;
+  private double m_lastVisionTimestamp = 0;
+  private boolean m_visionSeeded = false;
+  private int m_visionAccepted = 0;
+  private int m_visionRejected = 0;
+
+  // Samples the modules and gyro faster than the main loop, drained into the odometry each loop
+  private final OdometryThread m_odometryThread =
+      new OdometryThread(
+          this::sampleOdometry,
+          DriveConstants.kOdometryFrequencyHz,
+          DriveConstants.kOdometryQueueDepth);
+  private final double[] m_odometrySample = new double[OdometryThread.kSampleSize];
+  private final SwerveModulePosition[] m_odometryPositions = {
+    new SwerveModulePosition(),
+    new SwerveModulePosition(),
+    new SwerveModulePosition(),
+    new SwerveModulePosition()
+  };
+  private int m_odometryQueueDepth = 0;
+
+  // Moves the simulated robot, null on the robot
+  private final DrivetrainSim m_sim;
+  private double m_lastSimTime = Timer.getFPGATimestamp();
+
+  // Measures how many setpoint frames per second the modules skip sending
+  private long m_skippedSetpointsStart = 0;
+  private double m_skippedSetpointsStartTime = Timer.getFPGATimestamp();
+  private double m_skippedSetpointsPerSecond = 0;
 
   /** Creates a new DriveSubsystem. */
-  public DrivetrainSubsystem() {
+  public DrivetrainSubsystem(LimelightSubsystem limelight) {
+    m_limelight = limelight;
+    m_sim = RobotBase.isSimulation() ? new DrivetrainSim(m_modules, m_gyro) : null;
+
+    // Configure all four modules at once, they spend most of the time waiting on CAN replies
+    SparkConfigurator.runInParallel(
+        m_frontLeft::configure,
+        m_frontRight::configure,
+        m_rearLeft::configure,
+        m_rearRight::configure);
+
     zeroHeading();
     m_gyro.calibrate();
 
@@ -91,6 +178,9 @@ public class DrivetrainSubsystem extends SubsystemBase {
     m_chooser.addOption("Low Speed", DriveConstants.low);
     m_chooser.addOption("High Speed", DriveConstants.high);
     SmartDashboard.putData("Speed Drop Down", m_chooser);
+
+    updateInputs();
+    m_odometryThread.start();
   }
 
   /**
@@ -123,17 +213,32 @@ public class DrivetrainSubsystem extends SubsystemBase {
     y = ySpeedDelivered;
     r = rotDelivered;
 
-    var swerveModuleStates =
-        DriveConstants.kDriveKinematics.toSwerveModuleStates(
-            ChassisSpeeds.fromFieldRelativeSpeeds(
-                xSpeedDelivered, ySpeedDelivered, rotDelivered, getRotation2d()));
+    // Rotate the field relative speeds into the robot's frame
+    double heading = Math.toRadians(getHeading());
+    double cos = Math.cos(heading);
+    double sin = Math.sin(heading);
+    driveModules(
+        xSpeedDelivered * cos + ySpeedDelivered * sin,
+        -xSpeedDelivered * sin + ySpeedDelivered * cos,
+        rotDelivered);
+  }
 
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-        swerveModuleStates, DriveConstants.kMaxSpeedMetersPerSecond);
-    m_frontLeft.setDesiredState(swerveModuleStates[0]);
-    m_frontRight.setDesiredState(swerveModuleStates[1]);
-    m_rearLeft.setDesiredState(swerveModuleStates[2]);
-    m_rearRight.setDesiredState(swerveModuleStates[3]);
+  /**
+   * Drives field oriented like {@link #fieldDrive}, with the turn rate set directly instead of
+   * through the rotation slew limiter, for a controller that is turning the robot. The limiter
+   * follows along so the joystick picks up smoothly when the controller lets go.
+   *
+   * @param xSpeed Speed of the robot in the x direction (forward).
+   * @param ySpeed Speed of the robot in the y direction (sideways).
+   * @param rotRadiansPerSecond Angular rate of the robot, limited to maxTurn.
+   * @param maxTurn Max angular speed.
+   * @param maxDrive Max driving speed.
+   */
+  public void fieldDriveTurning(
+      double xSpeed, double ySpeed, double rotRadiansPerSecond, double maxTurn, double maxDrive) {
+    double rot = MathUtil.clamp(rotRadiansPerSecond / maxTurn, -1, 1);
+    m_rotLimiter.reset(rot);
+    fieldDrive(xSpeed, ySpeed, rot, maxTurn, maxDrive);
   }
 
   /**
@@ -166,16 +271,47 @@ public class DrivetrainSubsystem extends SubsystemBase {
     y = ySpeedDelivered;
     r = rotDelivered;
 
-    var swerveModuleStates =
-        DriveConstants.kDriveKinematics.toSwerveModuleStates(
-            new ChassisSpeeds(xSpeedDelivered, ySpeedDelivered, rotDelivered));
+    driveModules(xSpeedDelivered, ySpeedDelivered, rotDelivered);
+  }
 
-    SwerveDriveKinematics.desaturateWheelSpeeds(
-        swerveModuleStates, DriveConstants.kMaxSpeedMetersPerSecond);
-    m_frontLeft.setDesiredState(swerveModuleStates[0]);
-    m_frontRight.setDesiredState(swerveModuleStates[1]);
-    m_rearLeft.setDesiredState(swerveModuleStates[2]);
-    m_rearRight.setDesiredState(swerveModuleStates[3]);
+  /**
+   * Converts robot relative chassis speeds into module speeds and angles and sends them to the
+   * modules. This is the same math as {@link SwerveDriveKinematics#toSwerveModuleStates} and
+   * {@link SwerveDriveKinematics#desaturateWheelSpeeds}, done in preallocated arrays so driving
+   * does not create any garbage.
+   *
+   * @param xSpeed Forward speed in meters per second.
+   * @param ySpeed Sideways speed in meters per second.
+   * @param rot Angular rate in radians per second.
+   */
+  private void driveModules(double xSpeed, double ySpeed, double rot) {
+    if (xSpeed == 0 && ySpeed == 0 && rot == 0) {
+      // Hold the last angles while stopped instead of snapping the wheels back to zero
+      for (int i = 0; i < m_modules.length; i++) {
+        m_moduleSpeeds[i] = 0;
+      }
+    } else {
+      for (int i = 0; i < m_modules.length; i++) {
+        double vx = xSpeed - rot * DriveConstants.kModuleYMeters[i];
+        double vy = ySpeed + rot * DriveConstants.kModuleXMeters[i];
+        m_moduleSpeeds[i] = Math.sqrt(vx * vx + vy * vy);
+        m_moduleAngles[i] = Math.atan2(vy, vx);
+      }
+    }
+
+    // Scale every module down together if any of them would go faster than the max speed
+    double fastest = 0;
+    for (int i = 0; i < m_modules.length; i++) {
+      fastest = Math.max(fastest, Math.abs(m_moduleSpeeds[i]));
+    }
+    double scale =
+        fastest > DriveConstants.kMaxSpeedMetersPerSecond
+            ? DriveConstants.kMaxSpeedMetersPerSecond / fastest
+            : 1;
+
+    for (int i = 0; i < m_modules.length; i++) {
+      m_modules[i].setDesiredState(m_moduleSpeeds[i] * scale, m_moduleAngles[i]);
+    }
   }
 
   /** Sets the wheels into an X formation to prevent movement. */
@@ -211,17 +347,20 @@ public class DrivetrainSubsystem extends SubsystemBase {
 
   /** Zeroes the heading of the robot. */
   public void zeroHeading() {
-    m_gyro.reset();
+    m_gyro.zero();
+    // Don't leave the rest of this loop working from the old heading
+    m_gyro.read(m_gyroSample);
+    m_inputs.gyroAngleDegrees = m_gyroSample[NavXGyro.kAngle];
   }
 
   /** Zeroes the heading of the robot. */
   public double gyroangle() {
-    return m_gyro.getAngle() * (RobotConstants.kGyroReversed ? -1.0 : 1.0);
+    return m_inputs.gyroAngleDegrees;
   }
 
   public double getHeading() {
 
-    return Math.IEEEremainder(m_gyro.getAngle() * (RobotConstants.kGyroReversed ? -1.0 : 1.0), 360);
+    return Math.IEEEremainder(m_inputs.gyroAngleDegrees, 360);
   }
 
   public Rotation2d getRotation2d() {
@@ -229,29 +368,88 @@ public class DrivetrainSubsystem extends SubsystemBase {
   }
 
   /**
-   * Returns the currently-estimated pose of the robot.
+   * Returns the currently-estimated pose of the robot, relative to the pose last given to {@link
+   * #resetOdometry(Pose2d)}. Vision corrections to the field pose carry over into this pose.
    *
    * @return The pose.
    */
   public Pose2d getPose() {
-    return m_odometry.getPoseMeters();
+    return m_poseEstimator.getEstimatedPosition().relativeTo(m_origin);
+  }
+
+  /**
+   * Returns the currently-estimated pose of the robot on the field, blue origin.
+   *
+   * @return The pose.
+   */
+  public Pose2d getFieldPose() {
+    return m_poseEstimator.getEstimatedPosition();
+  }
+
+  /**
+   * Returns the estimated pose of the robot on the field at a recent time, blue origin. Times
+   * older than the pose history return the oldest pose kept.
+   *
+   * @param timestamp FPGA time in seconds
+   * @return The pose.
+   */
+  public Pose2d getFieldPoseAt(double timestamp) {
+    if (!m_poseHistory.get(timestamp, m_historyPose)) {
+      return getFieldPose();
+    }
+    return new Pose2d(
+        m_historyPose[PoseHistory.kX],
+        m_historyPose[PoseHistory.kY],
+        new Rotation2d(m_historyPose[PoseHistory.kTheta]));
   }
 
   /**
-   * Resets the odometry to the specified pose.
+   * Resets the odometry to the specified pose. This only moves the frame getPose() is reported in,
+   * the field pose and its vision corrections are kept.
    *
    * @param pose The pose to which to set the odometry.
    */
   public void resetOdometry(Pose2d pose) {
-    m_odometry.resetPosition(
-        Rotation2d.fromDegrees(getHeading()),
-        new SwerveModulePosition[] {
-          m_frontLeft.getPosition(),
-          m_frontRight.getPosition(),
-          m_rearLeft.getPosition(),
-          m_rearRight.getPosition()
-        },
-        pose);
+    // Catch up on queued samples so the new frame starts from where the robot is right now. The
+    // estimator is not reset, so samples still queued stay valid and are applied next loop.
+    updateOdometry();
+    m_origin = originFor(m_poseEstimator.getEstimatedPosition(), pose);
+  }
+
+  /**
+   * Resets the field pose to a known pose, throwing away what vision has seen so far, and makes
+   * getPose() read zero there. For when the robot is put somewhere known, like in simulation.
+   *
+   * @param fieldPose Where the robot is on the field, blue origin
+   */
+  public void resetFieldPose(Pose2d fieldPose) {
+    // Seed from the newest sample, the estimator must not see one from before the reset after it
+    updateOdometry();
+    m_odometryThread.clear();
+    m_poseEstimator.resetPosition(
+        Rotation2d.fromDegrees(m_odometrySample[OdometryThread.kHeading]),
+        m_odometryPositions,
+        fieldPose);
+    m_origin = fieldPose;
+    m_poseHistory.clear();
+    m_visionSeeded = true;
+  }
+
+  /** Returns the drivetrain's simulation, or null on the robot. */
+  public DrivetrainSim getSim() {
+    return m_sim;
+  }
+
+  /**
+   * Finds the origin that makes a field pose read as the given relative pose.
+   *
+   * @param fieldPose Pose on the field
+   * @param relativePose Pose the field pose should read as
+   * @return The origin, on the field
+   */
+  private static Pose2d originFor(Pose2d fieldPose, Pose2d relativePose) {
+    return fieldPose.transformBy(
+        new Transform2d(relativePose.getTranslation(), relativePose.getRotation()).inverse());
   }
 
   public void stopModules() {
@@ -279,25 +477,172 @@ public class DrivetrainSubsystem extends SubsystemBase {
    * @return The turn rate of the robot, in degrees per second
    */
   public double getTurnRate() {
-    return m_gyro.getRate() * (RobotConstants.kGyroReversed ? -1.0 : 1.0);
+    return m_inputs.gyroRateDegreesPerSecond;
+  }
+
+  /**
+   * Reads every drivetrain sensor exactly once into the inputs. This runs first in periodic(),
+   * which the scheduler calls before any commands, so every command this loop sees the same
+   * readings.
+   */
+  private void updateInputs() {
+    m_inputs.timestamp = Timer.getFPGATimestamp();
+    m_gyro.read(m_gyroSample);
+    m_inputs.gyroTimestamp = m_gyroSample[NavXGyro.kTimestamp];
+    m_inputs.gyroAngleDegrees = m_gyroSample[NavXGyro.kAngle];
+    m_inputs.gyroRateDegreesPerSecond = m_gyroSample[NavXGyro.kRate];
+    for (SwerveModule module : m_modules) {
+      module.updateInputs();
+    }
+  }
+
+  /**
+   * Reads the gyro and module positions into an odometry sample. This runs on the odometry
+   * thread, not the main loop.
+   *
+   * @param sample Sample to fill, laid out as described in {@link OdometryThread}
+   */
+  private void sampleOdometry(double[] sample) {
+    // The latest navX update can be up to a period old, project it forward to this sample's time
+    m_gyro.read(m_odometryGyroSample);
+    double age =
+        MathUtil.clamp(
+            sample[OdometryThread.kTimestamp] - m_odometryGyroSample[NavXGyro.kTimestamp],
+            0,
+            DriveConstants.kMaxGyroExtrapolationSeconds);
+    double heading =
+        m_odometryGyroSample[NavXGyro.kAngle] + m_odometryGyroSample[NavXGyro.kRate] * age;
+    sample[OdometryThread.kHeading] = Math.IEEEremainder(heading, 360);
+    for (int i = 0; i < m_modules.length; i++) {
+      sample[OdometryThread.kDrivePositions + i] = m_modules[i].readDrivePosition();
+      sample[OdometryThread.kTurnAngles + i] = m_modules[i].readTurnAngle();
+    }
+  }
+
+  /** Applies every sample the odometry thread has queued since the last loop, oldest first. */
+  private void updateOdometry() {
+    m_odometryQueueDepth = m_odometryThread.getQueueDepth();
+    while (m_odometryThread.poll(m_odometrySample)) {
+      for (int i = 0; i < m_odometryPositions.length; i++) {
+        m_odometryPositions[i].distanceMeters =
+            m_odometrySample[OdometryThread.kDrivePositions + i];
+        m_odometryPositions[i].angle =
+            new Rotation2d(m_odometrySample[OdometryThread.kTurnAngles + i]);
+      }
+      Pose2d pose =
+          m_poseEstimator.updateWithTime(
+              m_odometrySample[OdometryThread.kTimestamp],
+              Rotation2d.fromDegrees(m_odometrySample[OdometryThread.kHeading]),
+              m_odometryPositions);
+      m_poseHistory.add(
+          m_odometrySample[OdometryThread.kTimestamp],
+          pose.getX(),
+          pose.getY(),
+          pose.getRotation().getRadians());
+    }
+  }
+
+  /**
+   * Adds the latest Limelight pose to the pose estimator, if there is a new one worth trusting.
+   * The measurement is back-dated by the latency the Limelight reports, so the estimator applies it
+   * against the odometry from when the image was taken rather than from now.
+   */
+  private void updateVision() {
+    double timestamp = m_limelight.getFrameTimestamp();
+    if (timestamp == m_lastVisionTimestamp) {
+      // Nothing new since the last loop
+      return;
+    }
+    m_lastVisionTimestamp = timestamp;
+
+    int tagCount = (int) m_limelight.getFieldBotPose(VisionConstants.kBotPoseTagCount);
+    double distance = m_limelight.getFieldBotPose(VisionConstants.kBotPoseTagDistance);
+    double x = m_limelight.getFieldBotPose(VisionConstants.kBotPoseX);
+    double y = m_limelight.getFieldBotPose(VisionConstants.kBotPoseY);
+    if (tagCount < VisionConstants.kMinTagCount
+        || m_limelight.getAprilTagArea() < VisionConstants.kMinTagArea
+        || distance > VisionConstants.kMaxTagDistance
+        || x < 0
+        || x > VisionConstants.kFieldLengthMeters
+        || y < 0
+        || y > VisionConstants.kFieldWidthMeters) {
+      m_visionRejected++;
+      return;
+    }
+    m_visionAccepted++;
+
+    Pose2d visionPose =
+        new Pose2d(
+            x, y, Rotation2d.fromDegrees(m_limelight.getFieldBotPose(VisionConstants.kBotPoseYaw)));
+    double captureTime =
+        timestamp - m_limelight.getFieldBotPose(VisionConstants.kBotPoseLatency) * 1e-3;
+    if (!m_visionSeeded) {
+      // The estimator starts at the field origin, jump straight to the first good measurement
+      // instead of slowly pulling towards it, keeping getPose() where it was. The robot may have
+      // moved since the image was taken, so carry that motion over from the history.
+      Pose2d pose = getPose();
+      Pose2d fieldPose = getFieldPose();
+      Pose2d seed = visionPose.transformBy(fieldPose.minus(getFieldPoseAt(captureTime)));
+      m_poseEstimator.resetPosition(
+          Rotation2d.fromDegrees(m_odometrySample[OdometryThread.kHeading]),
+          m_odometryPositions,
+          seed);
+      m_origin = originFor(seed, pose);
+      // The old history is in the unseeded frame
+      m_poseHistory.clear();
+      m_visionSeeded = true;
+      return;
+    }
+
+    double scale = distance * distance / tagCount;
+    m_poseEstimator.addVisionMeasurement(
+        visionPose,
+        captureTime,
+        VecBuilder.fill(
+            VisionConstants.kVisionStdDevMeters * scale,
+            VisionConstants.kVisionStdDevMeters * scale,
+            tagCount > 1
+                ? VisionConstants.kVisionStdDevRadians * scale
+                : VisionConstants.kSingleTagStdDevRadians));
   }
 
   @Override
   public void periodic() {
+    updateInputs();
+
     SmartDashboard.putNumber("Z axis angle", getHeading());
+    SmartDashboard.putNumber(
+        "Gyro Sample Age (ms)", (m_inputs.timestamp - m_inputs.gyroTimestamp) * 1000);
     // SmartDashboard.putNumber("x", x);
     // SmartDashboard.putNumber("y", y);
     // SmartDashboard.putNumber("r", r);
     SmartDashboard.putBoolean("Auto is Waiting", waiting);
 
     // Update the odometry in the periodic block
-    m_odometry.update(
-        Rotation2d.fromDegrees(getHeading()),
-        new SwerveModulePosition[] {
-          m_frontLeft.getPosition(),
-          m_frontRight.getPosition(),
-          m_rearLeft.getPosition(),
-          m_rearRight.getPosition()
-        });
+    updateOdometry();
+    updateVision();
+    SmartDashboard.putNumber("Odometry Rate (Hz)", m_odometryThread.getSampleRate());
+    SmartDashboard.putNumber("Odometry Queue Depth", m_odometryQueueDepth);
+    SmartDashboard.putNumber("Vision Accepted", m_visionAccepted);
+    SmartDashboard.putNumber("Vision Rejected", m_visionRejected);
+
+    double now = Timer.getFPGATimestamp();
+    if (now - m_skippedSetpointsStartTime >= 1.0) {
+      long skipped = SwerveModule.getSkippedSetpoints();
+      m_skippedSetpointsPerSecond =
+          (skipped - m_skippedSetpointsStart) / (now - m_skippedSetpointsStartTime);
+      m_skippedSetpointsStart = skipped;
+      m_skippedSetpointsStartTime = now;
+    }
+    SmartDashboard.putNumber(
+        "CAN Frames Saved (per sec)",
+        m_skippedSetpointsPerSecond + SparkStatusProfile.getFramesSavedPerSecond());
+  }
+
+  @Override
+  public void simulationPeriodic() {
+    double now = Timer.getFPGATimestamp();
+    m_sim.update(now - m_lastSimTime);
+    m_lastSimTime = now;
   }
 }
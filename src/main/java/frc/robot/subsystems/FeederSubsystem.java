@@ -2,17 +2,46 @@ package frc.robot.subsystems;
 
 import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
-import com.revrobotics.ColorMatch;
-import com.revrobotics.ColorMatchResult;
-import com.revrobotics.ColorSensorV3;
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.filter.Debouncer.DebounceType;
 import edu.wpi.first.wpilibj.AnalogInput;
+import edu.wpi.first.wpilibj.AnalogTrigger;
+import edu.wpi.first.wpilibj.AnalogTriggerType;
+import edu.wpi.first.wpilibj.AsynchronousInterrupt;
 import edu.wpi.first.wpilibj.I2C;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj.util.Color;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.Constants.RobotConstants;
+import frc.utils.NoteColorSensor;
+import frc.utils.SparkStatusProfile;
 
+/**
+ * The feeder, which also keeps track of the note.
+ *
+ * <p>Each loop the color sensor, the limit switch and the feeder current are debounced and fed to
+ * a small state machine. Subsystems run before commands, so commands see a change the same loop
+ * it is detected, and each change is stamped with the time it happened.
+ *
+ * <p>The limit switch is also watched by an FPGA analog trigger and an interrupt, which records
+ * the exact time a note reaches it. The interrupt only records, the feeder motor is only ever
+ * driven from the main loop, which stops it in periodic() once the note is at the switch.
+ */
 public class FeederSubsystem extends SubsystemBase {
+  /** Where the note is. */
+  public enum NoteState {
+    /** No note. */
+    EMPTY,
+    /** The feeder is pulling in a note the sensors cannot see yet. */
+    INTAKING,
+    /** A note is held in the feeder. */
+    STAGED,
+    /** A note is being fed into the shooter. */
+    FIRING
+  }
+
   // Creating Both Motors
   private CANSparkMax m_feedLeftMotor =
       new CANSparkMax(RobotConstants.FeederLeftCanId, MotorType.kBrushless);
@@ -24,67 +53,251 @@ public class FeederSubsystem extends SubsystemBase {
   // Create color sensor and limit switch
   private final I2C.Port i2cPort = I2C.Port.kOnboard;
   private final AnalogInput limitSwitch = new AnalogInput(0);
-  private final ColorSensorV3 m_colorSensor = new ColorSensorV3(i2cPort);
+  private final AnalogTrigger m_switchTrigger = new AnalogTrigger(limitSwitch);
+  private final AsynchronousInterrupt m_switchInterrupt;
+  // Written only by the interrupt thread, true from a note pressing the switch until it lets go
+  private volatile boolean m_noteAtSwitch = false;
+  private volatile double m_noteArrivalTimestamp = 0;
+  // Whether periodic() stopped the feeder for a note at the switch
+  private boolean m_stoppedAtSwitch = false;
 
-  // Establish Color Matches
-  private final ColorMatch m_colorMatcher = new ColorMatch();
+  // Color of a note, read and matched on the sensor's own thread
   private final Color OrangeTarget = new Color(0.546, 0.363, 0.091);
+  private final NoteColorSensor m_colorSensor = new NoteColorSensor(i2cPort, OrangeTarget, 0.85);
+
+  // A note has to be seen for a moment to count, and missed for a bit longer to be gone
+  private final Debouncer m_noteSeen =
+      new Debouncer(RobotConstants.kNoteDebounceSeconds, DebounceType.kRising);
+  private final Debouncer m_noteKept =
+      new Debouncer(RobotConstants.kNoteClearSeconds, DebounceType.kFalling);
+  private final Debouncer m_noteCurrent =
+      new Debouncer(RobotConstants.kNoteDebounceSeconds, DebounceType.kRising);
+
+  // What the feeder was last told to do
+  private boolean m_feedingIn = false;
+  private boolean m_feedingToShooter = false;
+
+  // Updated once a loop in periodic()
+  private boolean m_hasNote = false;
+  private NoteState m_noteState = NoteState.EMPTY;
+  private double m_noteStateTimestamp = Timer.getFPGATimestamp();
+  private final Trigger m_noteSeated = new Trigger(() -> m_hasNote);
+  private final Trigger m_noteGone = m_noteSeated.negate();
 
   public FeederSubsystem(LimelightSubsystem limelightSubsys) {
     m_feedRightMotor.follow(m_feedLeftMotor, true);
+    SparkStatusProfile.FEEDER.apply(m_feedLeftMotor);
+    SparkStatusProfile.BASIC.apply(m_feedRightMotor);
     limelight = limelightSubsys;
-    m_colorMatcher.addColorMatch(OrangeTarget);
+    m_colorSensor.start();
+
+    limitSwitch.setOversampleBits(RobotConstants.kLimitSwitchOversampleBits);
+    limitSwitch.setAverageBits(RobotConstants.kLimitSwitchAverageBits);
+    int scale = 1 << RobotConstants.kLimitSwitchOversampleBits;
+    m_switchTrigger.setAveraged(true);
+    m_switchTrigger.setLimitsRaw(
+        RobotConstants.LimitSwtichActivation * scale,
+        (RobotConstants.LimitSwtichActivation + RobotConstants.kLimitSwitchHysteresis) * scale);
+    // The switch reads low when pressed, so a note arriving is a falling edge and a note leaving,
+    // however it leaves, is a rising edge
+    m_switchInterrupt =
+        new AsynchronousInterrupt(
+            m_switchTrigger.createOutput(AnalogTriggerType.kState), this::onLimitSwitch);
+    m_switchInterrupt.setInterruptEdges(true, true);
+    if (RobotConstants.kLimitSwitchInstalled) {
+      m_switchInterrupt.enable();
+    }
+  }
+
+  // Runs on the interrupt thread when a note presses or releases the switch, only records it
+  private void onLimitSwitch(Boolean rising, Boolean falling) {
+    if (falling) {
+      m_noteArrivalTimestamp = m_switchInterrupt.getFallingTimestamp();
+      m_noteAtSwitch = true;
+    }
+    // Both edges can come in one interrupt, the switch's state now says which was last
+    if (rising && m_switchTrigger.getTriggerState()) {
+      m_noteAtSwitch = false;
+    }
+  }
+
+  // Stops the feeder for a note at the switch, run before any command this loop
+  private void updateSwitchStop() {
+    if (!m_noteAtSwitch) {
+      // The note is gone, whether fed, pulled out by hand or cleared from a jam, so let the
+      // feeder pull in again
+      m_stoppedAtSwitch = false;
+    } else if (m_feedingIn && !m_stoppedAtSwitch) {
+      m_feedLeftMotor.stopMotor();
+      m_stoppedAtSwitch = true;
+    }
   }
 
   public void InFeederCmd() {
-    m_feedLeftMotor.set(RobotConstants.FeederInSpeed);
+    if (m_stoppedAtSwitch) {
+      // The note is staged, keep it off the flywheels
+      m_feedLeftMotor.stopMotor();
+    } else {
+      m_feedLeftMotor.set(RobotConstants.FeederInSpeed);
+    }
+    m_feedingIn = true;
+    m_feedingToShooter = false;
   }
 
   public void OutFeederCmd() {
     m_feedLeftMotor.set(RobotConstants.FeederOutSpeed);
+    m_stoppedAtSwitch = false;
+    m_feedingIn = false;
+    m_feedingToShooter = false;
   }
 
   public void StopFeederCmd() {
     m_feedLeftMotor.stopMotor();
+    m_feedingIn = false;
+    m_feedingToShooter = false;
   }
 
   public void ToShooterCmd() {
     m_feedLeftMotor.set(RobotConstants.FeederToShooterSpeed);
+    m_stoppedAtSwitch = false;
+    m_feedingIn = false;
+    m_feedingToShooter = true;
+  }
+
+  /** Returns whether the feeder was last told to pull a note in. */
+  public boolean isFeedingIn() {
+    return m_feedingIn;
   }
 
+  /** Returns whether the feeder was last told to push the note into the shooter. */
+  public boolean isFeedingToShooter() {
+    return m_feedingToShooter;
+  }
+
+  /**
+   * Tells the color sensor whether there is a note in front of it, for simulation only.
+   *
+   * @param present Whether a note is in the feeder
+   */
+  public void simulateNote(boolean present) {
+    m_colorSensor.simulate(present);
+  }
+
+  /** Returns whether the color sensor's latest reading is a note, this does not touch I2C. */
   public Boolean getColorSensor() {
+    return m_colorSensor.isDetected();
+  }
 
-    Color detectedColor = m_colorSensor.getColor();
+  /** Returns whether a note was in the feeder as of this loop's periodic(), debounced. */
+  public boolean hasNote() {
+    return m_hasNote;
+  }
 
-    ColorMatchResult match = m_colorMatcher.matchClosestColor(detectedColor);
+  /** True while a note is seated in the feeder. */
+  public Trigger noteSeated() {
+    return m_noteSeated;
+  }
 
-    if (match.color == OrangeTarget && match.confidence > 0.85) {
+  /** True once the feeder has been empty for {@link RobotConstants#kNoteClearSeconds}. */
+  public Trigger noteGone() {
+    return m_noteGone;
+  }
 
-      return true;
+  public NoteState getNoteState() {
+    return m_noteState;
+  }
 
-    } else {
+  /** Returns the FPGA time the note state last changed, in seconds. */
+  public double getNoteStateTimestamp() {
+    return m_noteStateTimestamp;
+  }
 
-      return false;
-    }
+  /**
+   * True while the note is in a state.
+   *
+   * @param state State to watch for
+   * @return The trigger
+   */
+  public Trigger noteState(NoteState state) {
+    return new Trigger(() -> m_noteState == state);
   }
 
+  /** Returns whether the limit switch is pressed, from the analog trigger's hysteresis state. */
   public Boolean getLimitSwitch() {
+    // The trigger state is false once the value drops below the lower limit
+    return !m_switchTrigger.getTriggerState();
+  }
 
-    if (limitSwitch.getValue() <= RobotConstants.LimitSwtichActivation) {
-
-      return true;
+  /** Returns the FPGA time the note last reached the limit switch, to the microsecond. */
+  public double getNoteArrivalTimestamp() {
+    return m_noteArrivalTimestamp;
+  }
 
-    } else {
+  // Fuses the sensors and steps the note state machine
+  private void updateNoteState() {
+    boolean seen = getColorSensor();
+    if (RobotConstants.kLimitSwitchInstalled) {
+      seen |= getLimitSwitch();
+    }
+    m_hasNote = m_noteKept.calculate(m_noteSeen.calculate(seen));
+    boolean pulling =
+        m_noteCurrent.calculate(
+            m_feedingIn
+                && m_feedLeftMotor.getOutputCurrent() > RobotConstants.kFeederNoteCurrentAmps);
 
-      return false;
+    NoteState next = m_noteState;
+    switch (m_noteState) {
+      case EMPTY:
+        if (m_hasNote) {
+          next = m_feedingToShooter ? NoteState.FIRING : NoteState.STAGED;
+        } else if (pulling) {
+          next = NoteState.INTAKING;
+        }
+        break;
+      case INTAKING:
+        if (m_hasNote) {
+          next = NoteState.STAGED;
+        } else if (!m_feedingIn) {
+          // Stopped before the note reached the sensors, it is not in the feeder
+          next = NoteState.EMPTY;
+        }
+        break;
+      case STAGED:
+        if (!m_hasNote) {
+          next = NoteState.EMPTY;
+        } else if (m_feedingToShooter) {
+          next = NoteState.FIRING;
+        }
+        break;
+      case FIRING:
+        if (!m_hasNote) {
+          next = NoteState.EMPTY;
+        } else if (!m_feedingToShooter) {
+          next = NoteState.STAGED;
+        }
+        break;
+    }
+    if (next != m_noteState) {
+      double now = Timer.getFPGATimestamp();
+      double arrival = m_noteArrivalTimestamp;
+      // When the switch saw the note arrive, its interrupt has the exact time
+      boolean arrived = next == NoteState.STAGED && arrival > m_noteStateTimestamp;
+      m_noteState = next;
+      m_noteStateTimestamp = arrived ? arrival : now;
     }
   }
 
   @Override
   public void periodic() {
-    SmartDashboard.putBoolean("Note Detected (Color)", getColorSensor());
+    updateSwitchStop();
+    updateNoteState();
+    SmartDashboard.putBoolean("Note Detected (Color)", m_hasNote);
+    SmartDashboard.putString("Note State", m_noteState.name());
+    SmartDashboard.putNumber("Color Sensor Max Read (ms)", m_colorSensor.getMaxReadMillis());
+    SmartDashboard.putNumber("Color Sensor Errors", m_colorSensor.getErrorCount());
+    SmartDashboard.putNumber("Color Sensor Resets", m_colorSensor.getResetCount());
 
-    if (getColorSensor()) {
+    if (m_hasNote) {
       limelight.setLEDsOn();
     } else {
       limelight.setLEDsOff();
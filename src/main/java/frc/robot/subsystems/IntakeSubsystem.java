@@ -8,12 +8,18 @@ import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
 import frc.robot.Constants;
+import frc.utils.SparkStatusProfile;
 
 public class IntakeSubsystem extends SubsystemBase {
   private CANSparkMax m_BumperMotor = new CANSparkMax(Constants.BumperMotor, MotorType.kBrushless);
   private CANSparkMax m_RollerMotor = new CANSparkMax(Constants.RollerMotor, MotorType.kBrushless);
+  // Whether the rollers were last told to pull a note in
+  private boolean m_intaking = false;
 
-  public IntakeSubsystem() {}
+  public IntakeSubsystem() {
+    SparkStatusProfile.BASIC.apply(m_BumperMotor);
+    SparkStatusProfile.BASIC.apply(m_RollerMotor);
+  }
 
   public void BmotorF() {
     m_BumperMotor.set(-Constants.RobotConstants.intakeMotorForward);
@@ -29,14 +35,21 @@ public class IntakeSubsystem extends SubsystemBase {
 
   public void RmotorF() {
     m_RollerMotor.set(Constants.RobotConstants.intakeMotorForward * 0.8);
+    m_intaking = true;
   }
 
   public void RmotorB() {
     m_RollerMotor.set(Constants.RobotConstants.intakeMotorBackward * 0.8);
+    m_intaking = false;
   }
 
   public void RmotorStop() {
     m_RollerMotor.stopMotor();
+    m_intaking = false;
+  }
+
+  public boolean isIntaking() {
+    return m_intaking;
   }
 
   @Override
@@ -6,27 +6,52 @@ package frc.robot.subsystems;
 
 import edu.wpi.first.math.geometry.Pose2d;
 import edu.wpi.first.math.geometry.Rotation2d;
+import edu.wpi.first.networktables.DoubleArraySubscriber;
+import edu.wpi.first.networktables.DoubleSubscriber;
 import edu.wpi.first.networktables.NetworkTable;
 import edu.wpi.first.networktables.NetworkTableEntry;
+import edu.wpi.first.networktables.NetworkTableEvent;
 import edu.wpi.first.networktables.NetworkTableInstance;
+import edu.wpi.first.networktables.NetworkTableValue;
+import edu.wpi.first.networktables.PubSubOption;
+import edu.wpi.first.networktables.TimestampedDouble;
+import edu.wpi.first.networktables.TimestampedDoubleArray;
 import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.DriverStation.Alliance;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import frc.robot.Constants.VisionConstants;
+import frc.utils.LatestSample;
+import java.util.EnumSet;
 import java.util.Optional;
 
 public class LimelightSubsystem extends SubsystemBase {
+  // Layout of a frame
+  public static final int kTimestamp = 0; // seconds (FPGA), when the frame arrived
+  public static final int kServerTime = 1; // seconds, on the Limelight's NetworkTables clock
+  public static final int kTx = 2; // x coordinate of tag in camera image
+  public static final int kTy = 3; // y coordinate of tag in camera image
+  public static final int kTa = 4; // area of tag in camera image
+  public static final int kTv = 5; // 1 if there is a target
+  public static final int kTid = 6; // ID of currently-seen target
+  public static final int kLatency = 7; // pipeline + capture, milliseconds
+  // Blue origin bot pose, see VisionConstants for the layout
+  public static final int kBotPose = 8;
+  // Primary target's position relative to the robot (x, y, z)
+  public static final int kTargetPose = kBotPose + VisionConstants.kBotPoseLength;
+  public static final int kFrameSize = kTargetPose + 3;
+
+  // Keep values that repeat the last frame's, so each one carries the time of its own frame
+  private static final PubSubOption kEveryFrame = PubSubOption.keepDuplicates(true);
+
   private final NetworkTable table = NetworkTableInstance.getDefault().getTable("limelight");
-  private final NetworkTableEntry tx = table.getEntry("tx"); // x coordinate of tag in camera image
-  private final NetworkTableEntry ty = table.getEntry("ty"); // y coordinate of tag in camera image
-  private final NetworkTableEntry ta = table.getEntry("ta"); // area of tag in camera image
   private final NetworkTableEntry botpose =
       table.getEntry(
           "botpose"); // bot pose (x, y, z, roll, pitch, yaw, total latency (not used currently))
   private final NetworkTableEntry botpose_wpired = table.getEntry("botpose_wpired");
   private final NetworkTableEntry botpose_wpiblue = table.getEntry("botpose_wpiblue");
-  private final NetworkTableEntry tid = table.getEntry("tid"); // ID of currently-seen target
   private final NetworkTableEntry leds = table.getEntry("ledMode");
   private final NetworkTableEntry camMode = table.getEntry("camMode");
   private final SendableChooser<String> m_chooser = new SendableChooser<>();
@@ -41,6 +66,39 @@ public class LimelightSubsystem extends SubsystemBase {
   private final String driver_view = "driver";
   private boolean absoluteCoordinates;
 
+  // The Limelight bumps hb once per frame, so it changes every frame even when nothing else does
+  private final DoubleSubscriber m_heartbeat =
+      table.getDoubleTopic("hb").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_tx = table.getDoubleTopic("tx").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_ty = table.getDoubleTopic("ty").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_ta = table.getDoubleTopic("ta").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_tv = table.getDoubleTopic("tv").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_tid = table.getDoubleTopic("tid").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_tl = table.getDoubleTopic("tl").subscribe(0, kEveryFrame);
+  private final DoubleSubscriber m_cl = table.getDoubleTopic("cl").subscribe(0, kEveryFrame);
+  private final DoubleArraySubscriber m_botpose =
+      table.getDoubleArrayTopic("botpose_wpiblue").subscribe(new double[0], kEveryFrame);
+  private final DoubleArraySubscriber m_targetpose =
+      table.getDoubleArrayTopic("targetpose_robotspace").subscribe(new double[0], kEveryFrame);
+  private final LatestSample m_frames = new LatestSample(kFrameSize);
+
+  // Only used on the NetworkTables listener thread
+  private final double[] m_writeFrame = new double[kFrameSize];
+
+  // Written only by the listener thread
+  private volatile long m_frameCount = 0;
+  private volatile long m_droppedFrames = 0;
+
+  // Only used by the main loop, the frame every getter reads from
+  private final double[] m_frame = new double[kFrameSize];
+  private boolean m_fresh = false;
+
+  // Frame rate measurement
+  private long m_rateStartCount = 0;
+  private long m_rateStartDropped = 0;
+  private double m_rateStartTime = Timer.getFPGATimestamp();
+  private double m_frameRate = 0;
+
   /** Creates a new LimelightSubSys. */
   public LimelightSubsystem() {
     // default to alliance coordinates
@@ -60,6 +118,67 @@ public class LimelightSubsystem extends SubsystemBase {
     view_chooser.setDefaultOption("Vision", vision_view);
     view_chooser.addOption("Driver Only", driver_view);
     SmartDashboard.putData("Limelight CamMode", view_chooser);
+
+    // Frames are pushed to us as they arrive rather than polled each loop, so every frame is seen
+    // exactly once and carries the time it arrived
+    NetworkTableInstance.getDefault()
+        .addListener(m_heartbeat, EnumSet.of(NetworkTableEvent.Kind.kValueAll), this::onFrame);
+  }
+
+  // Runs on the NetworkTables listener thread
+  private void onFrame(NetworkTableEvent event) {
+    NetworkTableValue value = event.valueData.value;
+    long serverTime = value.getServerTime();
+    TimestampedDouble tx = m_tx.getAtomic();
+    TimestampedDouble ty = m_ty.getAtomic();
+    TimestampedDouble ta = m_ta.getAtomic();
+    TimestampedDouble tv = m_tv.getAtomic();
+    TimestampedDouble tid = m_tid.getAtomic();
+    TimestampedDouble tl = m_tl.getAtomic();
+    TimestampedDouble cl = m_cl.getAtomic();
+    TimestampedDoubleArray pose = m_botpose.getAtomic();
+    TimestampedDoubleArray target = m_targetpose.getAtomic();
+
+    // Values written for one frame reach the server within a few milliseconds of its heartbeat.
+    // Any value further off is from the frame before, or already from the next one, so the frame is
+    // dropped rather than mixing two of them. Dropped frames are counted and warned about.
+    if (!sameFrame(tx.serverTime, serverTime)
+        || !sameFrame(ty.serverTime, serverTime)
+        || !sameFrame(ta.serverTime, serverTime)
+        || !sameFrame(tv.serverTime, serverTime)
+        || !sameFrame(tid.serverTime, serverTime)
+        || !sameFrame(tl.serverTime, serverTime)
+        || !sameFrame(cl.serverTime, serverTime)
+        || !sameFrame(pose.serverTime, serverTime)
+        || !sameFrame(target.serverTime, serverTime)) {
+      m_droppedFrames++;
+      return;
+    }
+
+    m_writeFrame[kTimestamp] = value.getTime() * 1e-6;
+    m_writeFrame[kServerTime] = serverTime * 1e-6;
+    m_writeFrame[kTx] = tx.value;
+    m_writeFrame[kTy] = ty.value;
+    m_writeFrame[kTa] = ta.value;
+    m_writeFrame[kTv] = tv.value;
+    m_writeFrame[kTid] = tid.value;
+    m_writeFrame[kLatency] = tl.value + cl.value;
+
+    // A missing pose reads as zero tags, which vision fusion throws out
+    for (int i = 0; i < VisionConstants.kBotPoseLength; i++) {
+      m_writeFrame[kBotPose + i] = i < pose.value.length ? pose.value[i] : 0;
+    }
+    for (int i = 0; i < 3; i++) {
+      m_writeFrame[kTargetPose + i] = i < target.value.length ? target.value[i] : Double.NaN;
+    }
+
+    m_frames.publish(m_writeFrame);
+    m_frameCount++;
+  }
+
+  // Whether a value's server time, in microseconds, is close enough to the heartbeat's
+  private static boolean sameFrame(long time, long heartbeatTime) {
+    return Math.abs(time - heartbeatTime) <= VisionConstants.kFrameMatchSeconds * 1e6;
   }
 
   @Override
@@ -86,27 +205,31 @@ public class LimelightSubsystem extends SubsystemBase {
       camMode.setNumber(1);
     }
 
-    // read values periodically
-    double x = getAprilTagX();
-    double y = getAprilTagY();
-    double area = getAprilTagArea();
-    int targetid = getAprilTagID();
-    // call either getAbsoluteBotPose or getTeamBotPose
-    double[] fieldpose;
-    if (absoluteCoordinates) {
-      fieldpose = getAbsoluteBotPose();
-    } else {
-      fieldpose = getAllianceBotPose();
+    // Take the latest frame once, everything else this loop reads from the copy
+    boolean hasFrame = m_frames.read(m_frame);
+    double now = Timer.getFPGATimestamp();
+    double age = now - m_frame[kTimestamp];
+    m_fresh = hasFrame && age < VisionConstants.kFrameStaleSeconds;
+
+    if (now - m_rateStartTime >= 1.0) {
+      long count = m_frameCount;
+      long dropped = m_droppedFrames;
+      m_frameRate = (count - m_rateStartCount) / (now - m_rateStartTime);
+      if (count == m_rateStartCount && dropped > m_rateStartDropped) {
+        // Frames are arriving but none is whole, vision is off until this is fixed
+        DriverStation.reportWarning(
+            "Limelight: dropping every frame, its values' timestamps do not match the heartbeat",
+            false);
+      }
+      m_rateStartCount = count;
+      m_rateStartDropped = dropped;
+      m_rateStartTime = now;
     }
 
-    // SmartDashboard.putNumber("LimelightX", x);
-    // SmartDashboard.putNumber("LimelightY", y);
-    // SmartDashboard.putNumber("LimelightArea", area);
-    // SmartDashboard.putNumber("Target ID", targetid);
-    // SmartDashboard.putNumber("Field pose X", fieldpose[0]);
-    // SmartDashboard.putNumber("Field pose Y", fieldpose[1]);
-    // SmartDashboard.putNumber("Field pose Z", fieldpose[2]);
-    // SmartDashboard.putNumber("Field pose Yaw", fieldpose[5]);
+    SmartDashboard.putNumber("Limelight FPS", m_frameRate);
+    SmartDashboard.putNumber("Limelight Frame Age (ms)", hasFrame ? age * 1000 : -1);
+    SmartDashboard.putBoolean("Limelight Fresh", m_fresh);
+    SmartDashboard.putNumber("Limelight Dropped Frames", m_droppedFrames);
   }
 
   public void setLEDsOn() {
@@ -129,25 +252,88 @@ public class LimelightSubsystem extends SubsystemBase {
     }
   }
 
+  /**
+   * Returns one value of the latest frame's blue origin bot pose.
+   *
+   * @param index Index into the bot pose, see {@code VisionConstants} for the layout
+   * @return The value, 0 if the frame had no pose
+   */
+  public double getFieldBotPose(int index) {
+    return m_frame[kBotPose + index];
+  }
+
+  /** Returns the FPGA time in seconds the latest frame arrived at, 0 before the first frame. */
+  public double getFrameTimestamp() {
+    return m_frame[kTimestamp];
+  }
+
+  /** Returns whether a frame has arrived recently enough to act on. */
+  public boolean isFresh() {
+    return m_fresh;
+  }
+
+  /** Returns how many frames are arriving each second, averaged over roughly one second. */
+  public double getFrameRate() {
+    return m_frameRate;
+  }
+
   public Pose2d getAlliancePose2d() {
     double poseArray[] = getAbsoluteBotPose();
     return new Pose2d(poseArray[0], poseArray[1], Rotation2d.fromDegrees(poseArray[5]));
   }
 
   public int getAprilTagID() {
-    return (int) tid.getDouble(0.0);
+    return (int) m_frame[kTid];
   }
 
   public double getAprilTagX() {
-    return tx.getDouble(0.0);
+    return m_frame[kTx];
   }
 
   public double getAprilTagY() {
-    return ty.getDouble(0.0);
+    return m_frame[kTy];
   }
 
   public double getAprilTagArea() {
-    return ta.getDouble(0.0);
+    return m_frame[kTa];
+  }
+
+  /** Returns whether the latest frame has a target, false once frames stop arriving. */
+  public boolean hasTarget() {
+    return m_fresh && m_frame[kTv] == 1;
+  }
+
+  /** Returns how long before it arrived the latest frame was captured, in milliseconds. */
+  public double getLatencyMillis() {
+    return m_frame[kLatency];
+  }
+
+  /** Returns whether the tag being targeted is one of the speaker tags. */
+  public boolean isSpeakerTag() {
+    int id = getAprilTagID();
+    for (int speakerId : VisionConstants.kSpeakerTagIds) {
+      if (id == speakerId) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns the straight line distance from the robot to the speaker tag in meters, from the tag's
+   * pose relative to the robot. This is the distance the shot table is measured in.
+   *
+   * @return The distance, or NaN when no speaker tag is being targeted
+   */
+  public double getSpeakerDistance() {
+    if (!m_fresh || !isSpeakerTag()) {
+      return Double.NaN;
+    }
+    // NaN when the frame had no target pose
+    double x = m_frame[kTargetPose];
+    double y = m_frame[kTargetPose + 1];
+    double z = m_frame[kTargetPose + 2];
+    return Math.sqrt(x * x + y * y + z * z);
   }
 
   // Set the pose of the camera relative to the robot. Can also be set in web interface
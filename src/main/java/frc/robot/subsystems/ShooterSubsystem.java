@@ -4,11 +4,29 @@
 
 package frc.robot.subsystems;
 
+import com.revrobotics.CANSparkBase.ControlType;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
 import com.revrobotics.RelativeEncoder;
+import com.revrobotics.SparkPIDController;
+import com.revrobotics.SparkPIDController.ArbFFUnits;
+import edu.wpi.first.math.MathUtil;
+import edu.wpi.first.math.filter.Debouncer;
+import edu.wpi.first.math.system.plant.DCMotor;
+import edu.wpi.first.wpilibj.Filesystem;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.RobotController;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.simulation.FlywheelSim;
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import edu.wpi.first.wpilibj2.command.SubsystemBase;
+import edu.wpi.first.wpilibj2.command.button.Trigger;
 import frc.robot.Constants.RobotConstants;
+import frc.robot.Constants.SimConstants;
+import frc.utils.ShotTable;
+import frc.utils.SparkStatusProfile;
+import java.io.File;
+import java.io.IOException;
 
 public class ShooterSubsystem extends SubsystemBase {
   private CANSparkMax m_shooterMotor1 =
@@ -18,20 +36,173 @@ public class ShooterSubsystem extends SubsystemBase {
   private CANSparkMax m_ampArmMotor =
       new CANSparkMax(RobotConstants.kAmpArmCanId, MotorType.kBrushless);
   private RelativeEncoder encAmpArm = m_ampArmMotor.getEncoder();
+  // The arm runs Smart Motion on the SPARK MAX, the roboRIO only sends the goal
+  private SparkPIDController m_ampArmPID = m_ampArmMotor.getPIDController();
+  private double m_ampArmGoal = 0; // arm rotations
+  // What the SPARK MAX was last sent, NaN until the first send
+  private double m_sentArmGoal = Double.NaN; // arm rotations
+  private double m_sentArmFF = Double.NaN; // volts
+
+  // Flywheels run the SPARK MAX velocity loop, the roboRIO only sends the speed
+  private RelativeEncoder m_shooterEnc1 = m_shooterMotor1.getEncoder();
+  private RelativeEncoder m_shooterEnc2 = m_shooterMotor2.getEncoder();
+  private SparkPIDController m_shooterPID1 = m_shooterMotor1.getPIDController();
+  private SparkPIDController m_shooterPID2 = m_shooterMotor2.getPIDController();
+  private double m_setpoint1 = 0; // rpm
+  private double m_setpoint2 = 0; // rpm
+  private final Debouncer m_settled = new Debouncer(RobotConstants.kFlywheelSettleSeconds);
+  private boolean m_ready = false;
+  private final Trigger m_readyTrigger = new Trigger(this::isReady);
+
+  // Flywheels when simulating, null on the robot
+  private final FlywheelSim m_flywheelSim1 = RobotBase.isSimulation() ? newFlywheelSim() : null;
+  private final FlywheelSim m_flywheelSim2 = RobotBase.isSimulation() ? newFlywheelSim() : null;
+  private double m_lastSimTime = Timer.getFPGATimestamp();
+
+  // Shots by distance, and the shot last looked up
+  private final ShotTable m_shotTable = loadShotTable();
+  private final double[] m_shot = new double[ShotTable.kShotSize];
 
   public ShooterSubsystem() {
     m_shooterMotor2.setInverted(true);
+    SparkStatusProfile.FLYWHEEL.apply(m_shooterMotor1);
+    SparkStatusProfile.FLYWHEEL.apply(m_shooterMotor2);
+    SparkStatusProfile.ARM.apply(m_ampArmMotor);
     encAmpArm.setPosition(0); // Reset Encoder on Boot
+    configureAmpArm();
+    configureFlywheel(m_shooterEnc1, m_shooterPID1);
+    configureFlywheel(m_shooterEnc2, m_shooterPID2);
+  }
+
+  private static ShotTable loadShotTable() {
+    File file = new File(Filesystem.getDeployDirectory(), RobotConstants.kShotTableFile);
+    try {
+      ShotTable table = ShotTable.load(file);
+      System.out.println("Loaded " + table.size() + " shots from " + file.getName());
+      return table;
+    } catch (IOException e) {
+      // Fall back to the subwoofer shot, which is what every shot was before the table
+      System.out.println("Could not load " + file.getName() + ", using one shot: " + e);
+      return new ShotTable(
+          new double[][] {{0, RobotConstants.kFlywheelMaxRpm, RobotConstants.kFlywheelMaxRpm, 0}});
+    }
+  }
+
+  private static FlywheelSim newFlywheelSim() {
+    return new FlywheelSim(DCMotor.getNEO(1), 1, SimConstants.kFlywheelMomentKgMetersSquared);
+  }
+
+  private void configureAmpArm() {
+    m_ampArmPID.setP(RobotConstants.kAmpArmP);
+    m_ampArmPID.setI(0);
+    m_ampArmPID.setD(0);
+    m_ampArmPID.setFF(RobotConstants.kAmpArmFF);
+    m_ampArmPID.setOutputRange(-1, 1);
+    m_ampArmPID.setSmartMotionMaxVelocity(RobotConstants.kAmpArmMaxVelocityRpm, 0);
+    m_ampArmPID.setSmartMotionMaxAccel(RobotConstants.kAmpArmMaxAccelRpmPerSecond, 0);
+    m_ampArmPID.setSmartMotionMinOutputVelocity(0, 0);
+    m_ampArmPID.setSmartMotionAllowedClosedLoopError(
+        RobotConstants.kAmpArmAllowedErrorRotations, 0);
+  }
+
+  private static void configureFlywheel(RelativeEncoder encoder, SparkPIDController pid) {
+    // The default velocity filter averages over 32 ms and lags a spin-up badly
+    encoder.setMeasurementPeriod(16);
+    encoder.setAverageDepth(2);
+    pid.setFF(RobotConstants.kFlywheelFF);
+    pid.setP(RobotConstants.kFlywheelP);
+    pid.setI(0);
+    pid.setD(0);
+    pid.setOutputRange(0, 1);
   }
 
+  /**
+   * Spins the flywheels at fractions of {@link RobotConstants#kFlywheelMaxRpm}, held by the SPARK
+   * MAX velocity loop so the speed does not sag with the battery.
+   *
+   * @param lTrigValue Left wheel speed, 0 to 1
+   * @param rTrigValue Right wheel speed, 0 to 1
+   */
   public void ShooterForwardCmd(double lTrigValue, double rTrigValue) {
-    m_shooterMotor1.set(lTrigValue);
-    m_shooterMotor2.set(rTrigValue);
+    setFlywheelRpm(
+        Math.min(lTrigValue, 1) * RobotConstants.kFlywheelMaxRpm,
+        Math.min(rTrigValue, 1) * RobotConstants.kFlywheelMaxRpm);
+  }
+
+  /**
+   * Spins the flywheels at set speeds.
+   *
+   * @param leftRpm Left wheel speed
+   * @param rightRpm Right wheel speed
+   */
+  public void setFlywheelRpm(double leftRpm, double rightRpm) {
+    m_setpoint1 = setSpeed(m_shooterMotor1, m_shooterPID1, leftRpm);
+    m_setpoint2 = setSpeed(m_shooterMotor2, m_shooterPID2, rightRpm);
+  }
+
+  private static double setSpeed(CANSparkMax motor, SparkPIDController pid, double rpm) {
+    if (rpm <= 0) {
+      // Coast down rather than braking to zero
+      motor.stopMotor();
+      return 0;
+    }
+    pid.setReference(rpm, ControlType.kVelocity);
+    return rpm;
+  }
+
+  /**
+   * Returns whether the shot table has shots from more than one distance. With only one there is
+   * nothing to pick between, and the fixed subwoofer shot is used instead.
+   */
+  public boolean hasShotTable() {
+    return m_shotTable.size() > 1;
+  }
+
+  /**
+   * Sets the flywheels and amp arm for a speaker shot from the shot table.
+   *
+   * @param distance Distance to the speaker tag in meters, see {@link
+   *     frc.robot.subsystems.LimelightSubsystem#getSpeakerDistance()}
+   */
+  public void setShot(double distance) {
+    m_shotTable.get(distance, m_shot);
+    setFlywheelRpm(m_shot[ShotTable.kLeftRpm], m_shot[ShotTable.kRightRpm]);
+    setArmGoal(m_shot[ShotTable.kArmDegrees] / 360);
   }
 
   public void motorStop() {
     m_shooterMotor1.stopMotor();
     m_shooterMotor2.stopMotor();
+    m_setpoint1 = 0;
+    m_setpoint2 = 0;
+  }
+
+  /**
+   * Returns whether both flywheels are spinning and have been within {@link
+   * RobotConstants#kFlywheelToleranceRpm} of their speeds for {@link
+   * RobotConstants#kFlywheelSettleSeconds}, as of this loop's periodic().
+   */
+  public boolean isReady() {
+    return m_ready;
+  }
+
+  /** True while the flywheels are ready to shoot. */
+  public Trigger ready() {
+    return m_readyTrigger;
+  }
+
+  /** Returns the left flywheel's speed in rpm. */
+  public double getLeftRpm() {
+    return m_flywheelSim1 != null
+        ? m_flywheelSim1.getAngularVelocityRPM()
+        : m_shooterEnc1.getVelocity();
+  }
+
+  /** Returns the right flywheel's speed in rpm. */
+  public double getRightRpm() {
+    return m_flywheelSim2 != null
+        ? m_flywheelSim2.getAngularVelocityRPM()
+        : m_shooterEnc2.getVelocity();
   }
 
   public double getAmpArmEnc() {
@@ -41,17 +212,74 @@ public class ShooterSubsystem extends SubsystemBase {
     // motor
   }
 
-  public void setArmSpeed(double speed) {
-    m_ampArmMotor.set(speed);
+  /**
+   * Moves the amp arm to a position. The SPARK MAX profiles the move and runs the position loop
+   * at 1 kHz.
+   *
+   * @param armRotations Goal in rotations of the arm from stowed, like {@link #getAmpArmEnc()}
+   */
+  public void setArmGoal(double armRotations) {
+    m_ampArmGoal = armRotations;
+  }
+
+  // Sends the goal with the gravity feedforward for where the arm is now. Only a new goal or a
+  // feedforward off by more than the deadband is sent, the SPARK MAX holds the last one until then.
+  private void updateAmpArm() {
+    double angle =
+        Math.toRadians(RobotConstants.kAmpArmStowedDegrees) + getAmpArmEnc() * 2 * Math.PI;
+    double arbFF = RobotConstants.kAmpArmGravityVolts * Math.cos(angle);
+    if (m_ampArmGoal == m_sentArmGoal
+        && Math.abs(arbFF - m_sentArmFF) < RobotConstants.kAmpArmFFDeadbandVolts) {
+      return;
+    }
+    m_ampArmPID.setReference(
+        m_ampArmGoal * RobotConstants.kAmpArmGearRatio,
+        ControlType.kSmartMotion,
+        0,
+        arbFF,
+        ArbFFUnits.kVoltage);
+    m_sentArmGoal = m_ampArmGoal;
+    m_sentArmFF = arbFF;
   }
 
   @Override
   public void periodic() {
-    // This method will be called once per scheduler run
+    updateAmpArm();
+
+    double velocity1 = getLeftRpm();
+    double velocity2 = getRightRpm();
+    boolean atSpeed =
+        m_setpoint1 > 0
+            && m_setpoint2 > 0
+            && Math.abs(velocity1 - m_setpoint1) <= RobotConstants.kFlywheelToleranceRpm
+            && Math.abs(velocity2 - m_setpoint2) <= RobotConstants.kFlywheelToleranceRpm;
+    m_ready = m_settled.calculate(atSpeed);
+    SmartDashboard.putNumber("Shooter Left (rpm)", velocity1);
+    SmartDashboard.putNumber("Shooter Right (rpm)", velocity2);
+    SmartDashboard.putBoolean("Shooter Ready", m_ready);
   }
 
   @Override
   public void simulationPeriodic() {
-    // This method will be called once per scheduler run during simulation
+    double now = Timer.getFPGATimestamp();
+    double dt = now - m_lastSimTime;
+    m_lastSimTime = now;
+    simulateFlywheel(m_flywheelSim1, m_setpoint1, dt);
+    simulateFlywheel(m_flywheelSim2, m_setpoint2, dt);
+  }
+
+  // Runs the same velocity loop the SPARK MAX does, stopped wheels coast
+  private static void simulateFlywheel(FlywheelSim flywheel, double setpoint, double dt) {
+    double output = 0;
+    if (setpoint > 0) {
+      double rpm = flywheel.getAngularVelocityRPM();
+      output =
+          MathUtil.clamp(
+              RobotConstants.kFlywheelFF * setpoint + RobotConstants.kFlywheelP * (setpoint - rpm),
+              0,
+              1);
+    }
+    flywheel.setInputVoltage(output * RobotController.getBatteryVoltage());
+    flywheel.update(dt);
   }
 }
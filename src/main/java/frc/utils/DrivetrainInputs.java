@@ -0,0 +1,23 @@
+package frc.utils;
+
+/**
+ * Every drivetrain sensor reading for one loop. The drivetrain fills this in once at the start of
+ * each loop and everything else in that loop reads from here instead of from the hardware, so all
+ * of the loop's logic sees the same readings and each sensor is only read over JNI once.
+ *
+ * <p>Module arrays are in the same order as {@code DriveConstants.kDriveKinematics}.
+ */
+public class DrivetrainInputs {
+  // FPGA time the inputs were read at, in seconds
+  public double timestamp = 0;
+
+  // Gyro, with kGyroReversed already applied. The timestamp is when the navX update arrived.
+  public double gyroTimestamp = 0;
+  public double gyroAngleDegrees = 0;
+  public double gyroRateDegreesPerSecond = 0;
+
+  // Swerve modules, turning angles are relative to the chassis
+  public final double[] drivePositionMeters = new double[4];
+  public final double[] driveVelocityMetersPerSecond = new double[4];
+  public final double[] turnAngleRadians = new double[4];
+}
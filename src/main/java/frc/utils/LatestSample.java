@@ -0,0 +1,69 @@
+package frc.utils;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the most recent sample written by one background thread, for any number of other threads
+ * to read.
+ *
+ * <p>This is a sequence lock: the writer bumps the sequence to an odd number, copies the sample in
+ * and bumps it to the next even number. A reader copies the sample out and retries if the sequence
+ * was odd or changed while it was copying. Neither side takes a lock or allocates, and the writer
+ * never waits on a reader.
+ */
+public class LatestSample {
+  private final AtomicLong m_sequence = new AtomicLong();
+  private final double[] m_values;
+
+  /**
+   * Creates an empty holder.
+   *
+   * @param size Number of values in a sample
+   */
+  public LatestSample(int size) {
+    m_values = new double[size];
+  }
+
+  /**
+   * Replaces the held sample. Only one thread may ever call this.
+   *
+   * @param values Sample to copy in
+   */
+  public void publish(double[] values) {
+    long sequence = m_sequence.get();
+    m_sequence.lazySet(sequence + 1);
+    // Keep the copy from being moved ahead of the odd sequence
+    VarHandle.storeStoreFence();
+    System.arraycopy(values, 0, m_values, 0, m_values.length);
+    m_sequence.set(sequence + 2);
+  }
+
+  /**
+   * Copies the held sample into {@code out}.
+   *
+   * @param out Array at least as long as a sample
+   * @return false if nothing has been published yet
+   */
+  public boolean read(double[] out) {
+    while (true) {
+      long before = m_sequence.get();
+      if ((before & 1) != 0) {
+        // Mid-write, which only takes a few nanoseconds
+        Thread.onSpinWait();
+        continue;
+      }
+      System.arraycopy(m_values, 0, out, 0, m_values.length);
+      // Keep the copy from being moved after the second sequence read
+      VarHandle.loadLoadFence();
+      if (m_sequence.get() == before) {
+        return before != 0;
+      }
+    }
+  }
+
+  /** Returns how many samples have been published. */
+  public long getCount() {
+    return m_sequence.get() >>> 1;
+  }
+}
@@ -0,0 +1,135 @@
+package frc.utils;
+
+import com.kauailabs.navx.AHRSProtocol.AHRSUpdateBase;
+import com.kauailabs.navx.frc.AHRS;
+import com.kauailabs.navx.frc.ITimestampedDataSubscriber;
+import edu.wpi.first.wpilibj.SerialPort;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * A navX read through its data callback instead of polled.
+ *
+ * <p>The navX streams at its maximum rate, and every update is stamped with the FPGA time as it
+ * arrives, turned into a continuous angle and rate, and published to a {@link LatestSample}.
+ * Reading the gyro only copies the latest sample and never waits on the serial port.
+ */
+public class NavXGyro implements ITimestampedDataSubscriber {
+  // Layout of a sample
+  public static final int kTimestamp = 0; // seconds (FPGA), when the update arrived
+  public static final int kAngle = 1; // degrees, continuous
+  public static final int kRate = 2; // degrees per second
+  public static final int kSampleSize = 3;
+
+  // Fastest rate the navX will stream at
+  public static final int kUpdateRateHz = 200;
+
+  private final AHRS m_ahrs;
+  private final double m_direction;
+  private final LatestSample m_latest = new LatestSample(kSampleSize);
+
+  // Only used on the navX thread
+  private final double[] m_sample = new double[kSampleSize];
+  private boolean m_hasYaw = false;
+  private double m_lastYaw = 0;
+  private double m_lastSensorTime = 0;
+  private double m_continuousYaw = 0;
+
+  // Only used by simulate()
+  private final double[] m_simSample = new double[kSampleSize];
+
+  // Subtracted from the angle, set by zero()
+  private volatile double m_offset = 0;
+
+  /**
+   * Starts streaming from a navX.
+   *
+   * @param port Port the navX is plugged into
+   * @param reversed Whether the navX is mounted upside down
+   */
+  public NavXGyro(SerialPort.Port port, boolean reversed) {
+    m_direction = reversed ? -1.0 : 1.0;
+    m_ahrs = new AHRS(port, AHRS.SerialDataType.kProcessedData, (byte) kUpdateRateHz);
+    m_ahrs.registerCallback(this, null);
+  }
+
+  // Runs on the navX's serial thread for every update
+  @Override
+  public void timestampedDataReceived(
+      long systemTimestamp, long sensorTimestamp, AHRSUpdateBase data, Object context) {
+    double now = Timer.getFPGATimestamp();
+    double sensorTime = sensorTimestamp / 1000.0;
+    double rate = 0;
+    if (m_hasYaw) {
+      // Yaw wraps at +-180, keep counting past it like getAngle() does
+      double delta = Math.IEEEremainder(data.yaw - m_lastYaw, 360);
+      m_continuousYaw += delta;
+      double dt = sensorTime - m_lastSensorTime;
+      rate = delta / (dt > 0 ? dt : 1.0 / kUpdateRateHz);
+    } else {
+      // Count from wherever the robot is pointing when the first update arrives
+      m_continuousYaw = 0;
+      m_hasYaw = true;
+    }
+    m_lastYaw = data.yaw;
+    m_lastSensorTime = sensorTime;
+
+    m_sample[kTimestamp] = now;
+    m_sample[kAngle] = m_direction * m_continuousYaw;
+    m_sample[kRate] = m_direction * rate;
+    m_latest.publish(m_sample);
+  }
+
+  /**
+   * Publishes a sample from the simulation in place of the navX, which sends nothing when
+   * simulating. Only one thread may call this, and only in simulation.
+   *
+   * @param angleDegrees Continuous angle, with the mounting direction already applied
+   * @param rateDegreesPerSecond Turning rate
+   */
+  public void simulate(double angleDegrees, double rateDegreesPerSecond) {
+    m_simSample[kTimestamp] = Timer.getFPGATimestamp();
+    m_simSample[kAngle] = angleDegrees;
+    m_simSample[kRate] = rateDegreesPerSecond;
+    m_latest.publish(m_simSample);
+  }
+
+  /**
+   * Copies the latest sample into {@code out}, with the zero offset applied.
+   *
+   * @param out Array of at least {@link #kSampleSize} to fill
+   * @return false if the navX has not sent anything yet
+   */
+  public boolean read(double[] out) {
+    if (!m_latest.read(out)) {
+      out[kTimestamp] = Timer.getFPGATimestamp();
+      out[kAngle] = 0;
+      out[kRate] = 0;
+      return false;
+    }
+    out[kAngle] -= m_offset;
+    return true;
+  }
+
+  /**
+   * Makes the current heading read as zero. This is done here rather than on the navX so the
+   * angle stays continuous across the update that was in flight when it was zeroed.
+   */
+  public void zero() {
+    double[] sample = new double[kSampleSize];
+    m_latest.read(sample);
+    m_offset = sample[kAngle];
+  }
+
+  public void calibrate() {
+    m_ahrs.calibrate();
+  }
+
+  public boolean isConnected() {
+    return m_ahrs.isConnected();
+  }
+
+  /** Returns how many updates the navX has sent. */
+  public long getSampleCount() {
+    return m_latest.getCount();
+  }
+}
@@ -0,0 +1,201 @@
+package frc.utils;
+
+import com.revrobotics.ColorMatch;
+import com.revrobotics.ColorMatchResult;
+import com.revrobotics.ColorSensorV3;
+import edu.wpi.first.hal.I2CJNI;
+import edu.wpi.first.wpilibj.I2C;
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.RobotBase;
+import edu.wpi.first.wpilibj.Timer;
+import edu.wpi.first.wpilibj.util.Color;
+
+/**
+ * A REV Color Sensor V3 read on its own thread, so the main loop never blocks on I2C.
+ *
+ * <p>A notifier reads the sensor at the rate it measures color, matches the color, and publishes
+ * the result to a {@link LatestSample}. Checking for a note only copies the latest result.
+ *
+ * <p>A read that fails or takes too long counts as an error. The roboRIO's onboard I2C port is
+ * known to lock up, and when it does every read fails, so after several errors in a row the sensor
+ * is closed and opened again, which reinitializes the port and the sensor. A sensor that stays
+ * broken, such as one that is unplugged, is reopened less and less often.
+ */
+public class NoteColorSensor {
+  // Layout of a sample
+  public static final int kTimestamp = 0; // seconds (FPGA), when the read finished
+  public static final int kDetected = 1; // 1 if the target color matched, 0 if not
+  public static final int kConfidence = 2; // 0 to 1, of the closest match
+  public static final int kReadMillis = 3; // how long the read took
+  public static final int kSampleSize = 4;
+
+  // The sensor measures color every 25 ms, reading faster only returns the same color
+  private static final double kPeriodSeconds = 0.025;
+  // A read this slow counts as an error, a good one takes around a millisecond
+  private static final double kSlowReadMillis = 10;
+  // Errors in a row before the sensor is opened again
+  private static final int kErrorsBeforeReset = 5;
+  // Wait after reopening before the next reopen, doubling each time until a good read
+  private static final double kMinReopenSeconds = 0.25;
+  private static final double kMaxReopenSeconds = 8;
+  // A result older than this is treated as no note
+  private static final double kStaleSeconds = 0.1;
+
+  private final I2C.Port m_port;
+  private final Color m_target;
+  private final double m_minConfidence;
+  private final ColorMatch m_matcher = new ColorMatch();
+  private final LatestSample m_latest = new LatestSample(kSampleSize);
+  private final Notifier m_notifier;
+
+  // Only used on the sensor thread
+  private ColorSensorV3 m_sensor;
+  private final double[] m_sample = new double[kSampleSize];
+  private int m_errorsInARow = 0;
+  private double m_reopenDelay = kMinReopenSeconds;
+  private double m_nextReopenTime = 0;
+
+  // Written only by the sensor thread
+  private volatile long m_errors = 0;
+  private volatile long m_resets = 0;
+  private volatile double m_maxReadMillis = 0;
+
+  // What the simulation says is in front of the sensor, read instead of the sensor
+  private volatile boolean m_simDetected = false;
+
+  // Only used by the reading thread
+  private final double[] m_read = new double[kSampleSize];
+
+  /**
+   * Opens the sensor, call {@link #start()} to begin reading.
+   *
+   * @param port Port the sensor is plugged into
+   * @param target Color of a note
+   * @param minConfidence How close a match has to be to count as a note, 0 to 1
+   */
+  public NoteColorSensor(I2C.Port port, Color target, double minConfidence) {
+    m_port = port;
+    m_target = target;
+    m_minConfidence = minConfidence;
+    m_matcher.addColorMatch(target);
+    m_sensor = open(port);
+    m_notifier = new Notifier(this::run);
+    m_notifier.setName("ColorSensor");
+  }
+
+  public void start() {
+    m_notifier.startPeriodic(kPeriodSeconds);
+  }
+
+  public void stop() {
+    m_notifier.stop();
+  }
+
+  private static ColorSensorV3 open(I2C.Port port) {
+    ColorSensorV3 sensor = new ColorSensorV3(port);
+    sensor.configureColorSensor(
+        ColorSensorV3.ColorSensorResolution.kColorSensorRes16bit,
+        ColorSensorV3.ColorSensorMeasurementRate.kColorRate25ms,
+        ColorSensorV3.GainFactor.kGain3x);
+    return sensor;
+  }
+
+  // Runs on the notifier thread
+  private void run() {
+    if (RobotBase.isSimulation()) {
+      m_sample[kTimestamp] = Timer.getFPGATimestamp();
+      m_sample[kDetected] = m_simDetected ? 1 : 0;
+      m_sample[kConfidence] = 1;
+      m_sample[kReadMillis] = 0;
+      m_latest.publish(m_sample);
+      return;
+    }
+
+    double start = Timer.getFPGATimestamp();
+    Color color = m_sensor.getColor();
+    double end = Timer.getFPGATimestamp();
+    double readMillis = (end - start) * 1000;
+
+    // A failed read comes back black, which normalizes to NaN
+    boolean failed =
+        Double.isNaN(color.red)
+            || color.red + color.green + color.blue == 0
+            || readMillis > kSlowReadMillis;
+    if (failed) {
+      m_errors++;
+      if (++m_errorsInARow >= kErrorsBeforeReset && end >= m_nextReopenTime) {
+        reopen(end);
+      }
+      // Keep the last good result, it goes stale if the errors keep coming
+      return;
+    }
+    m_errorsInARow = 0;
+    m_reopenDelay = kMinReopenSeconds;
+    if (readMillis > m_maxReadMillis) {
+      m_maxReadMillis = readMillis;
+    }
+
+    ColorMatchResult match = m_matcher.matchClosestColor(color);
+    boolean detected = match.color == m_target && match.confidence > m_minConfidence;
+    m_sample[kTimestamp] = end;
+    m_sample[kDetected] = detected ? 1 : 0;
+    m_sample[kConfidence] = match.confidence;
+    m_sample[kReadMillis] = readMillis;
+    m_latest.publish(m_sample);
+  }
+
+  // Runs on the notifier thread
+  private void reopen(double now) {
+    // ColorSensorV3 can't be closed, so release its I2C handle the way I2C.close() does. The
+    // onboard port is only really reinitialized once every handle on it is closed.
+    I2CJNI.i2CClose(m_port.value);
+    m_sensor = open(m_port);
+    m_errorsInARow = 0;
+    m_resets++;
+    m_nextReopenTime = now + m_reopenDelay;
+    m_reopenDelay = Math.min(m_reopenDelay * 2, kMaxReopenSeconds);
+  }
+
+  /**
+   * Copies the latest result into {@code out}.
+   *
+   * @param out Array of at least {@link #kSampleSize} to fill
+   * @return false if there has not been a good read yet
+   */
+  public boolean read(double[] out) {
+    return m_latest.read(out);
+  }
+
+  /** Returns whether the latest result is a note, false if there is no recent result. */
+  public boolean isDetected() {
+    if (!m_latest.read(m_read)) {
+      return false;
+    }
+    return m_read[kDetected] != 0
+        && Timer.getFPGATimestamp() - m_read[kTimestamp] < kStaleSeconds;
+  }
+
+  /**
+   * Sets whether there is a note in front of the sensor, for simulation only.
+   *
+   * @param detected Whether the next reads see a note
+   */
+  public void simulate(boolean detected) {
+    m_simDetected = detected;
+  }
+
+  /** Returns how many reads failed or were too slow. */
+  public long getErrorCount() {
+    return m_errors;
+  }
+
+  /** Returns how many times the sensor was opened again after a lockup. */
+  public long getResetCount() {
+    return m_resets;
+  }
+
+  /** Returns the slowest good read so far in milliseconds. */
+  public double getMaxReadMillis() {
+    return m_maxReadMillis;
+  }
+}
@@ -0,0 +1,121 @@
+package frc.utils;
+
+import edu.wpi.first.wpilibj.Notifier;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Samples odometry sensors on a dedicated thread at a faster rate than the main robot loop.
+ *
+ * <p>Every sample is stamped with the FPGA time and placed in a single-producer, single-consumer
+ * ring buffer. The notifier thread only ever writes and the main loop only ever reads, so neither
+ * side takes a lock and the samples are stored in preallocated arrays.
+ */
+public class OdometryThread {
+  /** Fills a sample with fresh sensor readings, called from the odometry thread. */
+  @FunctionalInterface
+  public interface Sampler {
+    void sample(double[] sample);
+  }
+
+  // Layout of a single sample
+  public static final int kTimestamp = 0; // seconds (FPGA)
+  public static final int kHeading = 1; // degrees
+  public static final int kDrivePositions = 2; // meters, one per module
+  public static final int kTurnAngles = 6; // radians, one per module
+  public static final int kSampleSize = 10;
+
+  private final Sampler m_sampler;
+  private final double m_period;
+  private final Notifier m_notifier;
+
+  private final double[][] m_buffer;
+  private final AtomicLong m_head = new AtomicLong(); // next slot to write, owned by the thread
+  private final AtomicLong m_tail = new AtomicLong(); // next slot to read, owned by the main loop
+  private volatile long m_dropped = 0;
+
+  // Sample rate measurement, only used from the main loop
+  private long m_rateStartCount = 0;
+  private double m_rateStartTime = Timer.getFPGATimestamp();
+  private double m_sampleRate = 0;
+
+  /**
+   * Creates the odometry thread, call {@link #start()} to begin sampling.
+   *
+   * @param sampler Reads the sensors into a sample
+   * @param frequency Rate to sample at in hertz
+   * @param capacity Number of samples that can be queued before new ones are dropped
+   */
+  public OdometryThread(Sampler sampler, double frequency, int capacity) {
+    m_sampler = sampler;
+    m_period = 1.0 / frequency;
+    m_buffer = new double[capacity][kSampleSize];
+    m_notifier = new Notifier(this::run);
+    m_notifier.setName("Odometry");
+  }
+
+  public void start() {
+    m_notifier.startPeriodic(m_period);
+  }
+
+  public void stop() {
+    m_notifier.stop();
+  }
+
+  // Producer side, runs on the notifier thread
+  private void run() {
+    long head = m_head.get();
+    if (head - m_tail.get() >= m_buffer.length) {
+      // Main loop has fallen behind, keep the older samples so the odometry stays continuous
+      m_dropped++;
+      return;
+    }
+    double[] slot = m_buffer[(int) (head % m_buffer.length)];
+    slot[kTimestamp] = Timer.getFPGATimestamp();
+    m_sampler.sample(slot);
+    m_head.lazySet(head + 1);
+  }
+
+  /**
+   * Copies the oldest queued sample into {@code out}.
+   *
+   * @param out Array of at least {@link #kSampleSize} to fill
+   * @return false if there were no samples waiting
+   */
+  public boolean poll(double[] out) {
+    long tail = m_tail.get();
+    if (tail == m_head.get()) {
+      return false;
+    }
+    System.arraycopy(m_buffer[(int) (tail % m_buffer.length)], 0, out, 0, kSampleSize);
+    m_tail.lazySet(tail + 1);
+    return true;
+  }
+
+  /** Throws away every queued sample, used when the odometry is reset. */
+  public void clear() {
+    m_tail.lazySet(m_head.get());
+  }
+
+  /** Returns how many samples are waiting to be read. */
+  public int getQueueDepth() {
+    return (int) (m_head.get() - m_tail.get());
+  }
+
+  /** Returns how many samples were dropped because the queue was full. */
+  public long getDroppedCount() {
+    return m_dropped;
+  }
+
+  /** Returns the measured sample rate in hertz, averaged over roughly one second. */
+  public double getSampleRate() {
+    double now = Timer.getFPGATimestamp();
+    if (now - m_rateStartTime >= 1.0) {
+      long count = m_head.get();
+      m_sampleRate = (count - m_rateStartCount) / (now - m_rateStartTime);
+      m_rateStartCount = count;
+      m_rateStartTime = now;
+    }
+    return m_sampleRate;
+  }
+}
@@ -0,0 +1,133 @@
+package frc.utils;
+
+import edu.wpi.first.math.MathUtil;
+
+/**
+ * A fixed length history of robot poses, used to look up where the robot was at a past time.
+ *
+ * <p>Poses are kept as plain doubles in preallocated ring buffers, so adding a pose or looking one
+ * up never creates any garbage. Lookups between two recorded poses are interpolated, and lookups
+ * outside of the history return the closest end of it.
+ */
+public class PoseHistory {
+  // Layout of a pose returned by get()
+  public static final int kX = 0; // meters
+  public static final int kY = 1; // meters
+  public static final int kTheta = 2; // radians
+  public static final int kPoseSize = 3;
+
+  private final double[] m_timestamps;
+  private final double[] m_x;
+  private final double[] m_y;
+  private final double[] m_theta;
+
+  // Index of the oldest pose and the number of poses kept
+  private int m_start = 0;
+  private int m_size = 0;
+
+  /**
+   * Creates an empty pose history.
+   *
+   * @param capacity Number of poses kept before the oldest ones are overwritten
+   */
+  public PoseHistory(int capacity) {
+    m_timestamps = new double[capacity];
+    m_x = new double[capacity];
+    m_y = new double[capacity];
+    m_theta = new double[capacity];
+  }
+
+  /**
+   * Records a pose, overwriting the oldest one if the history is full. Poses must be added in time
+   * order, ones older than the newest recorded pose are ignored.
+   *
+   * @param timestamp FPGA time of the pose in seconds
+   * @param x X position in meters
+   * @param y Y position in meters
+   * @param theta Heading in radians
+   */
+  public void add(double timestamp, double x, double y, double theta) {
+    if (m_size > 0 && timestamp < m_timestamps[index(m_size - 1)]) {
+      return;
+    }
+    int i;
+    if (m_size < m_timestamps.length) {
+      i = index(m_size);
+      m_size++;
+    } else {
+      i = m_start;
+      m_start = index(1);
+    }
+    m_timestamps[i] = timestamp;
+    m_x[i] = x;
+    m_y[i] = y;
+    m_theta[i] = theta;
+  }
+
+  /**
+   * Finds the pose at a time, interpolating between the recorded poses either side of it.
+   *
+   * @param timestamp FPGA time in seconds
+   * @param out Array of at least {@link #kPoseSize} to fill
+   * @return false if the history is empty
+   */
+  public boolean get(double timestamp, double[] out) {
+    if (m_size == 0) {
+      return false;
+    }
+
+    // Binary search for the first pose at or after the timestamp
+    int low = 0;
+    int high = m_size - 1;
+    if (timestamp >= m_timestamps[index(high)]) {
+      copy(index(high), out);
+      return true;
+    }
+    if (timestamp <= m_timestamps[index(low)]) {
+      copy(index(low), out);
+      return true;
+    }
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (m_timestamps[index(mid)] < timestamp) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+
+    int after = index(low);
+    int before = index(low - 1);
+    double t =
+        (timestamp - m_timestamps[before]) / (m_timestamps[after] - m_timestamps[before]);
+    out[kX] = MathUtil.interpolate(m_x[before], m_x[after], t);
+    out[kY] = MathUtil.interpolate(m_y[before], m_y[after], t);
+    // Interpolate the heading the short way around
+    out[kTheta] =
+        MathUtil.angleModulus(
+            m_theta[before] + MathUtil.angleModulus(m_theta[after] - m_theta[before]) * t);
+    return true;
+  }
+
+  /** Throws away every recorded pose, used when the poses jump to a new frame. */
+  public void clear() {
+    m_start = 0;
+    m_size = 0;
+  }
+
+  /** Returns the number of poses recorded. */
+  public int size() {
+    return m_size;
+  }
+
+  // Converts a position in the history (0 is the oldest) into an array index
+  private int index(int position) {
+    return (m_start + position) % m_timestamps.length;
+  }
+
+  private void copy(int i, double[] out) {
+    out[kX] = m_x[i];
+    out[kY] = m_y[i];
+    out[kTheta] = m_theta[i];
+  }
+}
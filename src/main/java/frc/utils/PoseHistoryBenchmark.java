@@ -0,0 +1,121 @@
+package frc.utils;
+
+import edu.wpi.first.math.geometry.Pose2d;
+import edu.wpi.first.math.geometry.Rotation2d;
+import frc.robot.Constants.DriveConstants;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Benchmarks {@link PoseHistory} the way the drivetrain fills it, at the odometry thread's rate
+ * over its two second window, against the TreeMap of poses it replaces, run by the
+ * benchmarkPoseHistory Gradle task. Prints the time per add and per lookup of each, and how many
+ * bytes each allocated.
+ */
+public final class PoseHistoryBenchmark {
+  private static final int kOperations = 5_000_000;
+  private static final double kPeriodSeconds = 1 / DriveConstants.kOdometryFrequencyHz;
+  private static final int kCapacity = DriveConstants.kPoseHistoryCapacity;
+
+  private static final com.sun.management.ThreadMXBean kThreads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  // Keeps the JIT from throwing away lookups whose results are never used
+  private static double s_sink = 0;
+
+  private PoseHistoryBenchmark() {}
+
+  public static void main(String[] args) {
+    // Run both twice, the first time only warms up the JIT
+    for (int run = 0; run < 2; run++) {
+      boolean print = run == 1;
+      benchmarkPoseHistory(print);
+      benchmarkTreeMap(print);
+    }
+  }
+
+  private static void benchmarkPoseHistory(boolean print) {
+    PoseHistory history = new PoseHistory(kCapacity);
+    double[] pose = new double[PoseHistory.kPoseSize];
+    long thread = Thread.currentThread().getId();
+    long startBytes = kThreads.getThreadAllocatedBytes(thread);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < kOperations; i++) {
+      history.add(i * kPeriodSeconds, Math.sin(i), Math.cos(i), i * 0.001);
+    }
+    long addNanos = System.nanoTime() - start;
+
+    double newest = (kOperations - 1) * kPeriodSeconds;
+    start = System.nanoTime();
+    for (int i = 0; i < kOperations; i++) {
+      history.get(newest - lookupAge(i), pose);
+      s_sink += pose[PoseHistory.kX];
+    }
+    long getNanos = System.nanoTime() - start;
+    long bytes = kThreads.getThreadAllocatedBytes(thread) - startBytes;
+
+    if (print) {
+      report("PoseHistory", addNanos, getNanos, bytes);
+    }
+  }
+
+  // What PoseHistory replaces, a sorted map of poses trimmed to the same window
+  private static void benchmarkTreeMap(boolean print) {
+    TreeMap<Double, Pose2d> history = new TreeMap<>();
+    double window = kCapacity * kPeriodSeconds;
+    long thread = Thread.currentThread().getId();
+    long startBytes = kThreads.getThreadAllocatedBytes(thread);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < kOperations; i++) {
+      double timestamp = i * kPeriodSeconds;
+      history.put(timestamp, new Pose2d(Math.sin(i), Math.cos(i), new Rotation2d(i * 0.001)));
+      if (history.firstKey() < timestamp - window) {
+        history.pollFirstEntry();
+      }
+    }
+    long addNanos = System.nanoTime() - start;
+
+    double newest = (kOperations - 1) * kPeriodSeconds;
+    start = System.nanoTime();
+    for (int i = 0; i < kOperations; i++) {
+      double timestamp = newest - lookupAge(i);
+      Map.Entry<Double, Pose2d> before = history.floorEntry(timestamp);
+      Map.Entry<Double, Pose2d> after = history.ceilingEntry(timestamp);
+      Pose2d pose;
+      if (before == null) {
+        pose = after.getValue();
+      } else if (after == null || after.getKey().equals(before.getKey())) {
+        pose = before.getValue();
+      } else {
+        double t = (timestamp - before.getKey()) / (after.getKey() - before.getKey());
+        pose = before.getValue().interpolate(after.getValue(), t);
+      }
+      s_sink += pose.getX();
+    }
+    long getNanos = System.nanoTime() - start;
+    long bytes = kThreads.getThreadAllocatedBytes(thread) - startBytes;
+
+    if (print) {
+      report("TreeMap", addNanos, getNanos, bytes);
+    }
+  }
+
+  // Spreads lookups over the whole window, off the recorded timestamps so they interpolate
+  private static double lookupAge(int i) {
+    return (i % kCapacity + 0.5) * kPeriodSeconds;
+  }
+
+  private static void report(String name, long addNanos, long getNanos, long bytes) {
+    System.out.printf(
+        "%s: %.1f ns per add, %.1f ns per lookup, %d bytes allocated, %d poses at %.0f Hz%n",
+        name,
+        (double) addNanos / kOperations,
+        (double) getNanos / kOperations,
+        bytes,
+        kCapacity,
+        DriveConstants.kOdometryFrequencyHz);
+  }
+}
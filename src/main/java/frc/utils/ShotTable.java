@@ -0,0 +1,140 @@
+package frc.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Flywheel speeds and arm angle to shoot from each distance to the speaker.
+ *
+ * <p>The table is read from a text file in the deploy directory, so new shots can be added without
+ * recompiling. Each line is {@code distance, left rpm, right rpm, arm degrees}, sorted by
+ * distance, and anything after a {@code #} is a comment. Entries are kept in primitive arrays and
+ * looked up by binary search, interpolating between the two closest distances, so a lookup never
+ * creates any garbage. Distances outside of the table use the closest end of it.
+ */
+public class ShotTable {
+  // Layout of a shot returned by get()
+  public static final int kLeftRpm = 0;
+  public static final int kRightRpm = 1;
+  public static final int kArmDegrees = 2;
+  public static final int kShotSize = 3;
+
+  private final double[] m_distances;
+  private final double[][] m_shots;
+
+  /**
+   * Creates a table from rows that are already sorted by distance.
+   *
+   * @param rows Rows of {@code distance, left rpm, right rpm, arm degrees}
+   */
+  public ShotTable(double[][] rows) {
+    if (rows.length == 0) {
+      throw new IllegalArgumentException("A shot table needs at least one row");
+    }
+    m_distances = new double[rows.length];
+    m_shots = new double[kShotSize][rows.length];
+    for (int i = 0; i < rows.length; i++) {
+      if (i > 0 && rows[i][0] <= rows[i - 1][0]) {
+        throw new IllegalArgumentException("Shot table distances must increase, row " + (i + 1));
+      }
+      m_distances[i] = rows[i][0];
+      for (int j = 0; j < kShotSize; j++) {
+        m_shots[j][i] = rows[i][j + 1];
+      }
+    }
+  }
+
+  /**
+   * Reads a table from a file.
+   *
+   * @param file File to read
+   * @return The table
+   * @throws IOException If the file cannot be read or a line is not four numbers
+   */
+  public static ShotTable load(File file) throws IOException {
+    List<double[]> rows = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      int number = 0;
+      while ((line = reader.readLine()) != null) {
+        number++;
+        int comment = line.indexOf('#');
+        if (comment >= 0) {
+          line = line.substring(0, comment);
+        }
+        line = line.trim();
+        if (line.isEmpty()) {
+          continue;
+        }
+        String[] fields = line.split(",");
+        if (fields.length != kShotSize + 1) {
+          throw new IOException(file.getName() + " line " + number + " is not four numbers");
+        }
+        double[] row = new double[kShotSize + 1];
+        try {
+          for (int i = 0; i < row.length; i++) {
+            row[i] = Double.parseDouble(fields[i].trim());
+          }
+        } catch (NumberFormatException e) {
+          throw new IOException(file.getName() + " line " + number + " is not four numbers", e);
+        }
+        rows.add(row);
+      }
+    }
+    try {
+      return new ShotTable(rows.toArray(new double[0][]));
+    } catch (IllegalArgumentException e) {
+      throw new IOException(file.getName() + ": " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Looks up the shot for a distance.
+   *
+   * @param distance Distance to the speaker in meters
+   * @param out Array of at least {@link #kShotSize} to fill
+   */
+  public void get(double distance, double[] out) {
+    int last = m_distances.length - 1;
+    if (distance <= m_distances[0]) {
+      copy(0, out);
+      return;
+    }
+    if (distance >= m_distances[last]) {
+      copy(last, out);
+      return;
+    }
+
+    // Find the last entry at or before the distance, the one after it is past it
+    int low = 0;
+    int high = last;
+    while (high - low > 1) {
+      int mid = (low + high) >>> 1;
+      if (m_distances[mid] <= distance) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    double t = (distance - m_distances[low]) / (m_distances[high] - m_distances[low]);
+    for (int j = 0; j < kShotSize; j++) {
+      double[] column = m_shots[j];
+      out[j] = column[low] + (column[high] - column[low]) * t;
+    }
+  }
+
+  private void copy(int index, double[] out) {
+    for (int j = 0; j < kShotSize; j++) {
+      out[j] = m_shots[j][index];
+    }
+  }
+
+  /** Returns the number of distances in the table. */
+  public int size() {
+    return m_distances.length;
+  }
+}
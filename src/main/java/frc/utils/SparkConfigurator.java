@@ -0,0 +1,140 @@
+package frc.utils;
+
+import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Preferences;
+import edu.wpi.first.wpilibj.Timer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Configures SPARK MAXes only when their configuration has changed.
+ *
+ * <p>Factory resetting, configuring and burning the flash of a SPARK MAX takes hundreds of
+ * milliseconds, and the settings are already saved on the controller after the first time. Each
+ * configuration is summarized as a hash, and the hash last burned to each controller is kept in
+ * the roboRIO's Preferences. If the hash matches and a quick read back of the controller agrees,
+ * the controller is left alone. A controller that was swapped out fails the read back and is
+ * configured again. The hash is only saved once the reset, every setting and the burn have all
+ * succeeded, so a controller that failed to configure is tried again on the next boot.
+ */
+public final class SparkConfigurator {
+  /**
+   * Applies every setting to a controller that has just been factory reset, returning the first
+   * error, see {@link SparkConfigurator#firstError}.
+   */
+  @FunctionalInterface
+  public interface Config {
+    REVLibError apply(CANSparkMax spark);
+  }
+
+  /** Reads a few settings back from a controller to check it really has the configuration. */
+  @FunctionalInterface
+  public interface Check {
+    boolean matches(CANSparkMax spark);
+  }
+
+  private static final String kPreferencePrefix = "SparkConfigHash/";
+
+  private SparkConfigurator() {}
+
+  /**
+   * Configures a controller if its configuration has changed since it was last burned.
+   *
+   * @param spark Controller to configure
+   * @param name Name to log the boot time under
+   * @param hash Hash of every setting {@code config} applies
+   * @param config Applies the settings after a factory reset
+   * @param check Reads back settings to confirm the controller has them
+   * @return true if the controller was configured and flashed successfully
+   */
+  public static boolean configure(
+      CANSparkMax spark, String name, long hash, Config config, Check check) {
+    double start = Timer.getFPGATimestamp();
+    String key = kPreferencePrefix + spark.getDeviceId();
+
+    if (Preferences.getLong(key, 0) == hash && check.matches(spark)) {
+      log(name, spark, "unchanged", start);
+      return false;
+    }
+
+    REVLibError error = spark.restoreFactoryDefaults();
+    if (error == REVLibError.kOk) {
+      error = config.apply(spark);
+    }
+    if (error == REVLibError.kOk) {
+      error = spark.burnFlash();
+    }
+    if (error != REVLibError.kOk) {
+      // Leave the saved hash alone so the next boot tries again
+      DriverStation.reportError(
+          String.format(
+              "%s (CAN %d) failed to configure: %s", name, spark.getDeviceId(), error),
+          false);
+      log(name, spark, "failed", start);
+      return false;
+    }
+
+    Preferences.setLong(key, hash);
+    log(name, spark, "configured", start);
+    return true;
+  }
+
+  /**
+   * Returns the first of several results that is not {@link REVLibError#kOk}, for a {@link Config}
+   * to check every setting it applies.
+   *
+   * @param results Results of each call, in order
+   * @return The first error, or kOk if there was none
+   */
+  public static REVLibError firstError(REVLibError... results) {
+    for (REVLibError result : results) {
+      if (result != REVLibError.kOk) {
+        return result;
+      }
+    }
+    return REVLibError.kOk;
+  }
+
+  private static void log(String name, CANSparkMax spark, String outcome, double start) {
+    System.out.printf(
+        "%s (CAN %d) %s in %.0f ms%n",
+        name, spark.getDeviceId(), outcome, (Timer.getFPGATimestamp() - start) * 1000);
+  }
+
+  /**
+   * Runs independent configuration tasks at the same time and waits for all of them. Each task
+   * spends most of its time waiting on CAN replies, so they overlap well even on two cores.
+   *
+   * @param tasks Tasks that each configure different controllers
+   */
+  public static void runInParallel(Runnable... tasks) {
+    ExecutorService executor = Executors.newFixedThreadPool(tasks.length);
+    try {
+      Future<?>[] futures = new Future<?>[tasks.length];
+      for (int i = 0; i < tasks.length; i++) {
+        futures[i] = executor.submit(tasks[i]);
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to configure controllers", e);
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Compares a setting read back from a controller, which stores it as a float.
+   *
+   * @param actual Value read from the controller
+   * @param expected Value that was configured
+   * @return true if they are the same once rounded to a float
+   */
+  public static boolean same(double actual, double expected) {
+    return (float) actual == (float) expected;
+  }
+}
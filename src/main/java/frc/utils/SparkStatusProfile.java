@@ -0,0 +1,102 @@
+package frc.utils;
+
+import com.revrobotics.CANSparkLowLevel.PeriodicFrame;
+import com.revrobotics.CANSparkMax;
+import frc.robot.Constants.DriveConstants;
+import java.util.concurrent.atomic.DoubleAdder;
+
+/**
+ * Periodic status frame rates for each kind of SPARK MAX on the robot.
+ *
+ * <p>Every SPARK MAX sends all of its status frames at the default rates unless told otherwise,
+ * which is far more CAN traffic than we read. Each profile sends the frames its motor actually
+ * needs quickly and slows everything else down. Frame periods are not saved by burnFlash(), so
+ * {@link #apply(CANSparkMax)} must be called every boot.
+ *
+ * <p>Frames (periods in ms):
+ *
+ * <ul>
+ *   <li>Status 0 - applied output and faults, also what followers follow
+ *   <li>Status 1 - velocity, temperature, voltage and current
+ *   <li>Status 2 - position
+ *   <li>Status 3 - analog sensor
+ *   <li>Status 4 - alternate encoder
+ *   <li>Status 5 - absolute (duty cycle) encoder position
+ *   <li>Status 6 - absolute (duty cycle) encoder velocity
+ * </ul>
+ */
+public enum SparkStatusProfile {
+  // Swerve driving motor, position feeds the odometry thread and velocity feeds getState()
+  DRIVE(20, 20, DriveConstants.kOdometryPeriodMs, false),
+  // Swerve turning motor, only the absolute encoder position is read
+  TURN(20, 100, 500, true),
+  // Motor that another motor follows, followers need status 0 at the default rate
+  LEADER(10, 100, 100, false),
+  // Feeder, followed like a leader and its current is watched for a note
+  FEEDER(10, 20, 100, false),
+  // Velocity controlled flywheel
+  FLYWHEEL(20, 20, 100, false),
+  // Position controlled arm
+  ARM(20, 100, 20, false),
+  // Motor that nothing reads back from, including followers
+  BASIC(100, 200, 200, false);
+
+  // Longest period the SPARK MAX accepts, used for frames nothing reads
+  private static final int kOffPeriodMs = 65535;
+  // Default periods from the SPARK MAX documentation, status 0 through 6
+  private static final int[] kDefaultPeriodsMs = {10, 20, 20, 50, 20, 200, 200};
+  private static final PeriodicFrame[] kFrames = {
+    PeriodicFrame.kStatus0,
+    PeriodicFrame.kStatus1,
+    PeriodicFrame.kStatus2,
+    PeriodicFrame.kStatus3,
+    PeriodicFrame.kStatus4,
+    PeriodicFrame.kStatus5,
+    PeriodicFrame.kStatus6
+  };
+
+  // Added to by every apply(), which the swerve modules call from several threads at once
+  private static final DoubleAdder s_framesSavedPerSecond = new DoubleAdder();
+
+  private final int[] m_periodsMs;
+
+  /**
+   * Describes the status frame rates for one kind of motor. Nothing on the robot uses the analog
+   * input, an alternate encoder or the absolute encoder velocity, so status 3, 4 and 6 are always
+   * turned off.
+   *
+   * @param status0 Applied output period in ms
+   * @param status1 Velocity period in ms
+   * @param status2 Position period in ms
+   * @param absoluteEncoder Whether the absolute encoder position is read by the odometry
+   */
+  SparkStatusProfile(int status0, int status1, int status2, boolean absoluteEncoder) {
+    m_periodsMs =
+        new int[] {
+          status0,
+          status1,
+          status2,
+          kOffPeriodMs,
+          kOffPeriodMs,
+          absoluteEncoder ? DriveConstants.kOdometryPeriodMs : kOffPeriodMs,
+          kOffPeriodMs
+        };
+  }
+
+  /**
+   * Sets every periodic status frame of a SPARK MAX to this profile's rates.
+   *
+   * @param spark Controller to configure
+   */
+  public void apply(CANSparkMax spark) {
+    for (int i = 0; i < kFrames.length; i++) {
+      spark.setPeriodicFramePeriod(kFrames[i], m_periodsMs[i]);
+      s_framesSavedPerSecond.add(1000.0 / kDefaultPeriodsMs[i] - 1000.0 / m_periodsMs[i]);
+    }
+  }
+
+  /** Returns how many status frames per second all configured controllers no longer send. */
+  public static double getFramesSavedPerSecond() {
+    return s_framesSavedPerSecond.sum();
+  }
+}
@@ -7,15 +7,46 @@ package frc.utils;
 import com.revrobotics.AbsoluteEncoder;
 import com.revrobotics.CANSparkLowLevel.MotorType;
 import com.revrobotics.CANSparkMax;
+import com.revrobotics.REVLibError;
 import com.revrobotics.RelativeEncoder;
 import com.revrobotics.SparkAbsoluteEncoder.Type;
 import com.revrobotics.SparkPIDController;
+import edu.wpi.first.math.MathUtil;
 import edu.wpi.first.math.geometry.Rotation2d;
 import edu.wpi.first.math.kinematics.SwerveModulePosition;
 import edu.wpi.first.math.kinematics.SwerveModuleState;
+import edu.wpi.first.wpilibj.Timer;
 import frc.robot.Constants.ModuleConstants;
+import java.util.Arrays;
 
 public class SwerveModule {
+  /**
+   * Motors and encoders that stand in for the module's when simulating, see {@link
+   * #setSim(Simulation)}. Positions and speeds are in the units of the real encoders after their
+   * conversion factors.
+   */
+  public interface Simulation {
+    /** Returns the driving encoder position in meters. */
+    double getDrivePosition();
+
+    /** Returns the driving encoder velocity in meters per second. */
+    double getDriveVelocity();
+
+    /** Returns the absolute turning encoder position in radians, 0 to 2 pi. */
+    double getTurnAngle();
+
+    /** Runs the driving velocity loop, in meters per second. */
+    void setDriveSetpoint(double speed);
+
+    /** Runs the turning position loop, in radians of the absolute encoder. */
+    void setTurnSetpoint(double angle);
+
+    void resetDrivePosition();
+
+    /** Stops both motors. */
+    void stop();
+  }
+
   private final CANSparkMax m_drivingSparkMax;
   private final CANSparkMax m_turningSparkMax;
 
@@ -25,89 +56,220 @@ public class SwerveModule {
   private final SparkPIDController m_drivingPIDController;
   private final SparkPIDController m_turningPIDController;
 
+  // Stands in for the motors and encoders when simulating, null on the robot
+  private Simulation m_sim = null;
+
+  // This loop's sensor readings, shared with the rest of the drivetrain
+  private final DrivetrainInputs m_inputs;
+  private final int m_index;
+
   private double m_chassisAngularOffset = 0;
-  private SwerveModuleState m_desiredState = new SwerveModuleState(0.0, new Rotation2d());
+  private double m_desiredSpeed = 0;
+  private double m_desiredAngle = 0;
+
+  // Last setpoints actually sent to the SPARKS MAX, see sendSetpoints()
+  private double m_sentDrivingSpeed = 0;
+  private double m_sentTurningAngle = 0;
+  private double m_drivingSentTime = Double.NEGATIVE_INFINITY;
+  private double m_turningSentTime = Double.NEGATIVE_INFINITY;
+  private static long s_skippedSetpoints = 0;
+
+  // Everything configureDriving() and configureTurning() set, changing any of these makes the
+  // SPARKS MAX get configured and flashed again on the next boot
+  private static final long kDrivingConfigHash =
+      Arrays.hashCode(
+          new double[] {
+            ModuleConstants.kDrivingEncoderPositionFactor,
+            ModuleConstants.kDrivingEncoderVelocityFactor,
+            ModuleConstants.kDrivingP,
+            ModuleConstants.kDrivingI,
+            ModuleConstants.kDrivingD,
+            ModuleConstants.kDrivingFF,
+            ModuleConstants.kDrivingMinOutput,
+            ModuleConstants.kDrivingMaxOutput,
+            ModuleConstants.kDrivingMotorIdleMode.ordinal(),
+            ModuleConstants.kDrivingMotorCurrentLimit
+          });
+  private static final long kTurningConfigHash =
+      Arrays.hashCode(
+          new double[] {
+            ModuleConstants.kTurningEncoderPositionFactor,
+            ModuleConstants.kTurningEncoderVelocityFactor,
+            ModuleConstants.kTurningEncoderInverted ? 1 : 0,
+            ModuleConstants.kTurningEncoderPositionPIDMinInput,
+            ModuleConstants.kTurningEncoderPositionPIDMaxInput,
+            ModuleConstants.kTurningP,
+            ModuleConstants.kTurningI,
+            ModuleConstants.kTurningD,
+            ModuleConstants.kTurningFF,
+            ModuleConstants.kTurningMinOutput,
+            ModuleConstants.kTurningMaxOutput,
+            ModuleConstants.kTurningMotorIdleMode.ordinal(),
+            ModuleConstants.kTurningMotorCurrentLimit
+          });
 
   /**
-   * Constructs a MAXSwerveModule and configures the driving and turning motor, encoder, and PID
-   * controller. This configuration is specific to the REV MAXSwerve Module built with NEOs, SPARKS
-   * MAX, and a Through Bore Encoder.
+   * Constructs a MAXSwerveModule, call {@link #configure()} to configure the driving and turning
+   * motor, encoder, and PID controller. This configuration is specific to the REV MAXSwerve Module
+   * built with NEOs, SPARKS MAX, and a Through Bore Encoder.
+   *
+   * @param inputs Drivetrain inputs this module reads its sensors into
+   * @param index Position of this module in the inputs arrays
    */
-  public SwerveModule(int drivingCANId, int turningCANId, double chassisAngularOffset) {
+  public SwerveModule(
+      int drivingCANId,
+      int turningCANId,
+      double chassisAngularOffset,
+      DrivetrainInputs inputs,
+      int index) {
+    m_inputs = inputs;
+    m_index = index;
+
     // Creates one motor for driving the wheel and one for turning the wheel
     m_drivingSparkMax = new CANSparkMax(drivingCANId, MotorType.kBrushless);
     m_turningSparkMax = new CANSparkMax(turningCANId, MotorType.kBrushless);
 
-    // Factory reset, so we get the SPARKS MAX to a known state before configuring
-    // them. This is useful in case a SPARK MAX is swapped out.
-    m_drivingSparkMax.restoreFactoryDefaults();
-    m_turningSparkMax.restoreFactoryDefaults();
-
     // Setup encoders and PID controllers for the driving and turning SPARKS MAX.
     m_drivingEncoder = m_drivingSparkMax.getEncoder();
     m_turningEncoder = m_turningSparkMax.getAbsoluteEncoder(Type.kDutyCycle);
     m_drivingPIDController = m_drivingSparkMax.getPIDController();
     m_turningPIDController = m_turningSparkMax.getPIDController();
-    m_drivingPIDController.setFeedbackDevice(m_drivingEncoder);
-    m_turningPIDController.setFeedbackDevice(m_turningEncoder);
-
-    // Apply position and velocity conversion factors for the driving encoder. The
-    // native units for position and velocity are rotations and RPM, respectively,
-    // but we want meters and meters per second to use with WPILib's swerve APIs.
-    m_drivingEncoder.setPositionConversionFactor(ModuleConstants.kDrivingEncoderPositionFactor);
-    m_drivingEncoder.setVelocityConversionFactor(ModuleConstants.kDrivingEncoderVelocityFactor);
-
-    // Apply position and velocity conversion factors for the turning encoder. We
-    // want these in radians and radians per second to use with WPILib's swerve
-    // APIs.
-    m_turningEncoder.setPositionConversionFactor(ModuleConstants.kTurningEncoderPositionFactor);
-    m_turningEncoder.setVelocityConversionFactor(ModuleConstants.kTurningEncoderVelocityFactor);
-
-    // Invert the turning encoder, since the output shaft rotates in the opposite direction of
-    // the steering motor in the MAXSwerve Module.
-    m_turningEncoder.setInverted(ModuleConstants.kTurningEncoderInverted);
-
-    // Enable PID wrap around for the turning motor. This will allow the PID
-    // controller to go through 0 to get to the setpoint i.e. going from 350 degrees
-    // to 10 degrees will go through 0 rather than the other direction which is a
-    // longer route.
-    m_turningPIDController.setPositionPIDWrappingEnabled(true);
-    m_turningPIDController.setPositionPIDWrappingMinInput(
-        ModuleConstants.kTurningEncoderPositionPIDMinInput);
-    m_turningPIDController.setPositionPIDWrappingMaxInput(
-        ModuleConstants.kTurningEncoderPositionPIDMaxInput);
-
-    // Set the PID gains for the driving motor. Note these are example gains, and you
-    // may need to tune them for your own robot!
-    m_drivingPIDController.setP(ModuleConstants.kDrivingP);
-    m_drivingPIDController.setI(ModuleConstants.kDrivingI);
-    m_drivingPIDController.setD(ModuleConstants.kDrivingD);
-    m_drivingPIDController.setFF(ModuleConstants.kDrivingFF);
-    m_drivingPIDController.setOutputRange(
-        ModuleConstants.kDrivingMinOutput, ModuleConstants.kDrivingMaxOutput);
-
-    // Set the PID gains for the turning motor. Note these are example gains, and you
-    // may need to tune them for your own robot!
-    m_turningPIDController.setP(ModuleConstants.kTurningP);
-    m_turningPIDController.setI(ModuleConstants.kTurningI);
-    m_turningPIDController.setD(ModuleConstants.kTurningD);
-    m_turningPIDController.setFF(ModuleConstants.kTurningFF);
-    m_turningPIDController.setOutputRange(
-        ModuleConstants.kTurningMinOutput, ModuleConstants.kTurningMaxOutput);
-
-    m_drivingSparkMax.setIdleMode(ModuleConstants.kDrivingMotorIdleMode);
-    m_turningSparkMax.setIdleMode(ModuleConstants.kTurningMotorIdleMode);
-    m_drivingSparkMax.setSmartCurrentLimit(ModuleConstants.kDrivingMotorCurrentLimit);
-    m_turningSparkMax.setSmartCurrentLimit(ModuleConstants.kTurningMotorCurrentLimit);
-
-    // Save the SPARK MAX configurations. If a SPARK MAX browns out during
-    // operation, it will maintain the above configurations.
-    m_drivingSparkMax.burnFlash();
-    m_turningSparkMax.burnFlash();
 
     m_chassisAngularOffset = chassisAngularOffset;
-    m_desiredState.angle = new Rotation2d(m_turningEncoder.getPosition());
+  }
+
+  /**
+   * Makes the module drive a simulation instead of its SPARKS MAX. Call before {@link
+   * #configure()} and before the odometry thread starts, only when simulating.
+   *
+   * @param sim The module's simulated motors and encoders
+   */
+  public void setSim(Simulation sim) {
+    m_sim = sim;
+  }
+
+  /** Returns the absolute encoder reading with the wheel pointing forward, in radians. */
+  public double getChassisAngularOffset() {
+    return m_chassisAngularOffset;
+  }
+
+  /**
+   * Configures both SPARKS MAX and reads the module's sensors for the first time. The SPARKS MAX
+   * are only factory reset and flashed when their saved configuration does not match {@link
+   * ModuleConstants}, see {@link SparkConfigurator}. This only talks to this module's
+   * controllers, so every module can be configured at the same time.
+   */
+  public void configure() {
+    SparkConfigurator.configure(
+        m_drivingSparkMax,
+        "Swerve " + m_index + " driving",
+        kDrivingConfigHash,
+        spark -> configureDriving(),
+        spark ->
+            SparkConfigurator.same(
+                    m_drivingEncoder.getPositionConversionFactor(),
+                    ModuleConstants.kDrivingEncoderPositionFactor)
+                && SparkConfigurator.same(
+                    m_drivingPIDController.getFF(), ModuleConstants.kDrivingFF));
+    SparkConfigurator.configure(
+        m_turningSparkMax,
+        "Swerve " + m_index + " turning",
+        kTurningConfigHash,
+        spark -> configureTurning(),
+        spark ->
+            SparkConfigurator.same(
+                    m_turningEncoder.getPositionConversionFactor(),
+                    ModuleConstants.kTurningEncoderPositionFactor)
+                && m_turningEncoder.getInverted() == ModuleConstants.kTurningEncoderInverted
+                && SparkConfigurator.same(
+                    m_turningPIDController.getP(), ModuleConstants.kTurningP));
+
+    // Only send the status frames the odometry and getState() need quickly. This includes
+    // sending the driving position and absolute turning position at the odometry thread's rate.
+    SparkStatusProfile.DRIVE.apply(m_drivingSparkMax);
+    SparkStatusProfile.TURN.apply(m_turningSparkMax);
+
     m_drivingEncoder.setPosition(0);
+    updateInputs();
+    m_desiredAngle = m_inputs.turnAngleRadians[m_index];
+  }
+
+  // Applies every driving setting, the SPARK MAX has just been factory reset
+  private REVLibError configureDriving() {
+    return SparkConfigurator.firstError(
+        m_drivingPIDController.setFeedbackDevice(m_drivingEncoder),
+
+        // Apply position and velocity conversion factors for the driving encoder. The
+        // native units for position and velocity are rotations and RPM, respectively,
+        // but we want meters and meters per second to use with WPILib's swerve APIs.
+        m_drivingEncoder.setPositionConversionFactor(ModuleConstants.kDrivingEncoderPositionFactor),
+        m_drivingEncoder.setVelocityConversionFactor(ModuleConstants.kDrivingEncoderVelocityFactor),
+
+        // Set the PID gains for the driving motor. Note these are example gains, and you
+        // may need to tune them for your own robot!
+        m_drivingPIDController.setP(ModuleConstants.kDrivingP),
+        m_drivingPIDController.setI(ModuleConstants.kDrivingI),
+        m_drivingPIDController.setD(ModuleConstants.kDrivingD),
+        m_drivingPIDController.setFF(ModuleConstants.kDrivingFF),
+        m_drivingPIDController.setOutputRange(
+            ModuleConstants.kDrivingMinOutput, ModuleConstants.kDrivingMaxOutput),
+        m_drivingSparkMax.setIdleMode(ModuleConstants.kDrivingMotorIdleMode),
+        m_drivingSparkMax.setSmartCurrentLimit(ModuleConstants.kDrivingMotorCurrentLimit));
+  }
+
+  // Applies every turning setting, the SPARK MAX has just been factory reset
+  private REVLibError configureTurning() {
+    return SparkConfigurator.firstError(
+        m_turningPIDController.setFeedbackDevice(m_turningEncoder),
+
+        // Apply position and velocity conversion factors for the turning encoder. We
+        // want these in radians and radians per second to use with WPILib's swerve
+        // APIs.
+        m_turningEncoder.setPositionConversionFactor(ModuleConstants.kTurningEncoderPositionFactor),
+        m_turningEncoder.setVelocityConversionFactor(ModuleConstants.kTurningEncoderVelocityFactor),
+
+        // Invert the turning encoder, since the output shaft rotates in the opposite direction of
+        // the steering motor in the MAXSwerve Module.
+        m_turningEncoder.setInverted(ModuleConstants.kTurningEncoderInverted),
+
+        // Enable PID wrap around for the turning motor. This will allow the PID
+        // controller to go through 0 to get to the setpoint i.e. going from 350 degrees
+        // to 10 degrees will go through 0 rather than the other direction which is a
+        // longer route.
+        m_turningPIDController.setPositionPIDWrappingEnabled(true),
+        m_turningPIDController.setPositionPIDWrappingMinInput(
+            ModuleConstants.kTurningEncoderPositionPIDMinInput),
+        m_turningPIDController.setPositionPIDWrappingMaxInput(
+            ModuleConstants.kTurningEncoderPositionPIDMaxInput),
+
+        // Set the PID gains for the turning motor. Note these are example gains, and you
+        // may need to tune them for your own robot!
+        m_turningPIDController.setP(ModuleConstants.kTurningP),
+        m_turningPIDController.setI(ModuleConstants.kTurningI),
+        m_turningPIDController.setD(ModuleConstants.kTurningD),
+        m_turningPIDController.setFF(ModuleConstants.kTurningFF),
+        m_turningPIDController.setOutputRange(
+            ModuleConstants.kTurningMinOutput, ModuleConstants.kTurningMaxOutput),
+        m_turningSparkMax.setIdleMode(ModuleConstants.kTurningMotorIdleMode),
+        m_turningSparkMax.setSmartCurrentLimit(ModuleConstants.kTurningMotorCurrentLimit));
+  }
+
+  /**
+   * Reads every sensor on the module into the drivetrain inputs. Called once at the start of each
+   * loop, everything else on the module reads from the inputs afterwards.
+   */
+  public void updateInputs() {
+    // Apply chassis angular offset to the encoder position to get the position
+    // relative to the chassis.
+    if (m_sim != null) {
+      m_inputs.drivePositionMeters[m_index] = m_sim.getDrivePosition();
+      m_inputs.driveVelocityMetersPerSecond[m_index] = m_sim.getDriveVelocity();
+      m_inputs.turnAngleRadians[m_index] = m_sim.getTurnAngle() - m_chassisAngularOffset;
+      return;
+    }
+    m_inputs.drivePositionMeters[m_index] = m_drivingEncoder.getPosition();
+    m_inputs.driveVelocityMetersPerSecond[m_index] = m_drivingEncoder.getVelocity();
+    m_inputs.turnAngleRadians[m_index] = m_turningEncoder.getPosition() - m_chassisAngularOffset;
   }
 
   /**
@@ -116,11 +278,9 @@ public class SwerveModule {
    * @return The current state of the module.
    */
   public SwerveModuleState getState() {
-    // Apply chassis angular offset to the encoder position to get the position
-    // relative to the chassis.
     return new SwerveModuleState(
-        m_drivingEncoder.getVelocity(),
-        new Rotation2d(m_turningEncoder.getPosition() - m_chassisAngularOffset));
+        m_inputs.driveVelocityMetersPerSecond[m_index],
+        new Rotation2d(m_inputs.turnAngleRadians[m_index]));
   }
 
   /**
@@ -129,11 +289,34 @@ public class SwerveModule {
    * @return The current position of the module.
    */
   public SwerveModulePosition getPosition() {
-    // Apply chassis angular offset to the encoder position to get the position
-    // relative to the chassis.
     return new SwerveModulePosition(
-        m_drivingEncoder.getPosition(),
-        new Rotation2d(m_turningEncoder.getPosition() - m_chassisAngularOffset));
+        m_inputs.drivePositionMeters[m_index], new Rotation2d(m_inputs.turnAngleRadians[m_index]));
+  }
+
+  /**
+   * Reads the distance the module has driven straight from the SPARK MAX. Only the odometry thread
+   * should use this, the main loop reads from the inputs.
+   *
+   * @return The driving encoder position in meters.
+   */
+  public double readDrivePosition() {
+    if (m_sim != null) {
+      return m_sim.getDrivePosition();
+    }
+    return m_drivingEncoder.getPosition();
+  }
+
+  /**
+   * Reads the angle of the module relative to the chassis straight from the SPARK MAX. Only the
+   * odometry thread should use this, the main loop reads from the inputs.
+   *
+   * @return The turning angle in radians.
+   */
+  public double readTurnAngle() {
+    if (m_sim != null) {
+      return m_sim.getTurnAngle() - m_chassisAngularOffset;
+    }
+    return m_turningEncoder.getPosition() - m_chassisAngularOffset;
   }
 
   /**
@@ -142,34 +325,95 @@ public class SwerveModule {
    * @param desiredState Desired state with speed and angle.
    */
   public void setDesiredState(SwerveModuleState desiredState) {
+    setDesiredState(desiredState.speedMetersPerSecond, desiredState.angle.getRadians());
+  }
+
+  /**
+   * Sets the desired state for the module without creating any objects, this is what the
+   * drivetrain calls every loop.
+   *
+   * @param speedMetersPerSecond Desired wheel speed.
+   * @param angleRadians Desired module angle relative to the chassis.
+   */
+  public void setDesiredState(double speedMetersPerSecond, double angleRadians) {
     // Apply chassis angular offset to the desired state.
-    SwerveModuleState correctedDesiredState = new SwerveModuleState();
-    correctedDesiredState.speedMetersPerSecond = desiredState.speedMetersPerSecond;
-    correctedDesiredState.angle =
-        desiredState.angle.plus(Rotation2d.fromRadians(m_chassisAngularOffset));
+    double speed = speedMetersPerSecond;
+    double angle = angleRadians + m_chassisAngularOffset;
 
     // Optimize the reference state to avoid spinning further than 90 degrees.
-    SwerveModuleState optimizedDesiredState =
-        SwerveModuleState.optimize(
-            correctedDesiredState, new Rotation2d(m_turningEncoder.getPosition()));
+    double error = MathUtil.angleModulus(angleRadians - m_inputs.turnAngleRadians[m_index]);
+    if (Math.abs(error) > Math.PI / 2) {
+      speed = -speed;
+      angle += Math.PI;
+    }
 
     // Command driving and turning SPARKS MAX towards their respective setpoints.
-    m_drivingPIDController.setReference(
-        optimizedDesiredState.speedMetersPerSecond, CANSparkMax.ControlType.kVelocity);
+    sendSetpoints(speed, MathUtil.angleModulus(angle));
 
-    m_turningPIDController.setReference(
-        optimizedDesiredState.angle.getRadians(), CANSparkMax.ControlType.kPosition);
+    m_desiredSpeed = speedMetersPerSecond;
+    m_desiredAngle = angleRadians;
+  }
+
+  /**
+   * Sends setpoints to the SPARKS MAX, skipping any that have not changed since the last time they
+   * were sent. A parked robot would otherwise send the same two frames every loop for every
+   * module. Unchanged setpoints are still resent every {@link
+   * ModuleConstants#kSetpointHeartbeatSeconds} in case a frame was lost.
+   *
+   * @param speed Driving speed in meters per second.
+   * @param angle Turning angle in radians, already offset and optimized.
+   */
+  private void sendSetpoints(double speed, double angle) {
+    double now = Timer.getFPGATimestamp();
 
-    m_desiredState = desiredState;
+    if (Math.abs(speed - m_sentDrivingSpeed) > ModuleConstants.kDrivingSetpointTolerance
+        || now - m_drivingSentTime >= ModuleConstants.kSetpointHeartbeatSeconds) {
+      m_drivingPIDController.setReference(speed, CANSparkMax.ControlType.kVelocity);
+      if (m_sim != null) {
+        m_sim.setDriveSetpoint(speed);
+      }
+      m_sentDrivingSpeed = speed;
+      m_drivingSentTime = now;
+    } else {
+      s_skippedSetpoints++;
+    }
+
+    if (Math.abs(MathUtil.angleModulus(angle - m_sentTurningAngle))
+            > ModuleConstants.kTurningSetpointTolerance
+        || now - m_turningSentTime >= ModuleConstants.kSetpointHeartbeatSeconds) {
+      m_turningPIDController.setReference(angle, CANSparkMax.ControlType.kPosition);
+      if (m_sim != null) {
+        m_sim.setTurnSetpoint(angle);
+      }
+      m_sentTurningAngle = angle;
+      m_turningSentTime = now;
+    } else {
+      s_skippedSetpoints++;
+    }
+  }
+
+  /** Returns the total number of setpoint frames every module has skipped sending. */
+  public static long getSkippedSetpoints() {
+    return s_skippedSetpoints;
   }
 
   /** Zeroes all the SwerveModule encoders. */
   public void resetEncoders() {
     m_drivingEncoder.setPosition(0);
+    if (m_sim != null) {
+      m_sim.resetDrivePosition();
+    }
   }
 
   public void stop() {
     m_drivingSparkMax.stopMotor();
     m_turningSparkMax.stopMotor();
+    if (m_sim != null) {
+      m_sim.stop();
+    }
+
+    // Stopping leaves closed loop control, so the next setpoint must be sent even if unchanged
+    m_drivingSentTime = Double.NEGATIVE_INFINITY;
+    m_turningSentTime = Double.NEGATIVE_INFINITY;
   }
 }
@@ -0,0 +1,52 @@
+package frc.robot.sim;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.Constants.SimConstants;
+import frc.robot.RobotContainer;
+import frc.robot.sim.AutoSimulation.Plan;
+import frc.robot.sim.AutoSimulation.Result;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DynamicTest;
+import org.junit.jupiter.api.TestFactory;
+
+/**
+ * Runs every auto in simulation, the same way the simulateAuto task does, and fails any that no
+ * longer finishes in the auto period, ends too far from where it should, or takes too long to
+ * simulate.
+ */
+class AutoSimulationTest {
+  private static RobotContainer s_container;
+
+  @BeforeAll
+  static void startRobot() {
+    s_container = AutoSimulation.startRobot();
+  }
+
+  @TestFactory
+  List<DynamicTest> autos() {
+    // One robot runs every auto in turn, so they run in the auto selector's order
+    return AutoSimulation.plans().stream()
+        .map(plan -> DynamicTest.dynamicTest(plan.name, () -> check(plan)))
+        .collect(Collectors.toList());
+  }
+
+  private static void check(Plan plan) {
+    Result result = AutoSimulation.run(s_container, plan, plan.start);
+    double errorMeters = result.error.getTranslation().getNorm();
+    double errorDegrees = Math.abs(result.error.getRotation().getDegrees());
+
+    assertTrue(result.finished, () -> plan.name + " ran out of time");
+    assertTrue(
+        errorMeters <= SimConstants.kMaxAutoPoseErrorMeters,
+        () -> String.format("%s ended %.3f m from where it should", plan.name, errorMeters));
+    assertTrue(
+        errorDegrees <= SimConstants.kMaxAutoHeadingErrorDegrees,
+        () -> String.format("%s ended %.1f degrees off", plan.name, errorDegrees));
+    assertTrue(
+        result.wallMillis <= SimConstants.kMaxAutoWallSeconds * 1000,
+        () -> String.format("%s took %.0f ms to simulate", plan.name, result.wallMillis));
+  }
+}
@@ -0,0 +1,92 @@
+package frc.robot.subsystems;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.wpi.first.hal.HAL;
+import frc.robot.sim.SwerveModuleSim;
+import frc.utils.DrivetrainInputs;
+import frc.utils.SwerveModule;
+import java.lang.management.ManagementFactory;
+import java.util.function.IntConsumer;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that driving creates no garbage once the JIT has warmed up. Only the drive path, which is
+ * all the drivetrain's own code, is measured. Applying odometry is not, since WPILib's pose
+ * estimator and kinematics create objects for every sample.
+ */
+class DrivetrainSubsystemTest {
+  // Enough calls for the JIT to compile the drive path before anything is measured
+  private static final int kWarmUpCalls = 20_000;
+  private static final int kMeasuredCalls = 10_000;
+
+  private static final com.sun.management.ThreadMXBean kThreads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private static DrivetrainSubsystem s_drivetrain;
+  private static SwerveModule s_module;
+
+  @BeforeAll
+  static void setUp() {
+    assertTrue(HAL.initialize(500, 0));
+    s_drivetrain = new DrivetrainSubsystem(new LimelightSubsystem());
+    // CAN IDs nothing else on the robot uses
+    s_module = new SwerveModule(40, 41, Math.PI / 2, new DrivetrainInputs(), 0);
+    s_module.setSim(new SwerveModuleSim(Math.PI / 2));
+  }
+
+  @Test
+  void fieldDriveDoesNotAllocate() {
+    assertEquals(
+        0,
+        allocatedBytes(i -> s_drivetrain.fieldDrive(Math.sin(i), Math.cos(i), 0.5, 3, 4)),
+        "bytes allocated by fieldDrive()");
+  }
+
+  @Test
+  void robotDriveDoesNotAllocate() {
+    assertEquals(
+        0,
+        allocatedBytes(i -> s_drivetrain.robotDrive(Math.sin(i), Math.cos(i), -0.5, 3, 4)),
+        "bytes allocated by robotDrive()");
+  }
+
+  @Test
+  void stoppedDriveDoesNotAllocate() {
+    assertEquals(
+        0,
+        allocatedBytes(i -> s_drivetrain.fieldDrive(0, 0, 0, 3, 4)),
+        "bytes allocated by fieldDrive() while stopped");
+  }
+
+  @Test
+  void setDesiredStateDoesNotAllocate() {
+    assertEquals(
+        0,
+        allocatedBytes(i -> s_module.setDesiredState(Math.sin(i) * 4, i * 0.01)),
+        "bytes allocated by SwerveModule.setDesiredState()");
+  }
+
+  /**
+   * Warms up a call and then measures what it allocates on this thread.
+   *
+   * @param call Call to measure, given a different number every time
+   * @return Bytes allocated over {@link #kMeasuredCalls} calls
+   */
+  private static long allocatedBytes(IntConsumer call) {
+    long thread = Thread.currentThread().getId();
+    for (int i = 0; i < kWarmUpCalls; i++) {
+      call.accept(i);
+    }
+    // Once more so the measurement itself is warmed up too
+    kThreads.getThreadAllocatedBytes(thread);
+
+    long start = kThreads.getThreadAllocatedBytes(thread);
+    for (int i = 0; i < kMeasuredCalls; i++) {
+      call.accept(kWarmUpCalls + i);
+    }
+    return kThreads.getThreadAllocatedBytes(thread) - start;
+  }
+}
@@ -0,0 +1,118 @@
+package frc.utils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import frc.robot.Constants.DriveConstants;
+import java.lang.management.ManagementFactory;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Checks that the pose history interpolates, keeps only its newest poses and creates no garbage.
+ * Its speed against a TreeMap is measured by the benchmarkPoseHistory task, see {@link
+ * PoseHistoryBenchmark}.
+ */
+class PoseHistoryTest {
+  private static final double kDelta = 1e-9;
+
+  private static final com.sun.management.ThreadMXBean kThreads =
+      (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+  private final double[] m_pose = new double[PoseHistory.kPoseSize];
+
+  @Test
+  void emptyHistoryHasNoPose() {
+    assertFalse(new PoseHistory(4).get(0, m_pose));
+  }
+
+  @Test
+  void interpolatesBetweenPoses() {
+    PoseHistory history = new PoseHistory(4);
+    history.add(1, 0, 0, 0);
+    history.add(2, 2, -4, 1);
+
+    assertTrue(history.get(1.25, m_pose));
+    assertEquals(0.5, m_pose[PoseHistory.kX], kDelta);
+    assertEquals(-1, m_pose[PoseHistory.kY], kDelta);
+    assertEquals(0.25, m_pose[PoseHistory.kTheta], kDelta);
+  }
+
+  @Test
+  void interpolatesHeadingTheShortWayAround() {
+    PoseHistory history = new PoseHistory(4);
+    history.add(0, 0, 0, Math.PI - 0.1);
+    history.add(1, 0, 0, -Math.PI + 0.1);
+
+    history.get(0.5, m_pose);
+    assertEquals(Math.PI, Math.abs(m_pose[PoseHistory.kTheta]), kDelta);
+  }
+
+  @Test
+  void clampsOutsideTheHistory() {
+    PoseHistory history = new PoseHistory(4);
+    history.add(1, 1, 0, 0);
+    history.add(2, 2, 0, 0);
+
+    history.get(0, m_pose);
+    assertEquals(1, m_pose[PoseHistory.kX], kDelta);
+    history.get(3, m_pose);
+    assertEquals(2, m_pose[PoseHistory.kX], kDelta);
+  }
+
+  @Test
+  void overwritesTheOldestPoseWhenFull() {
+    PoseHistory history = new PoseHistory(3);
+    for (int i = 0; i < 5; i++) {
+      history.add(i, i, 0, 0);
+    }
+
+    assertEquals(3, history.size());
+    // Poses 0 and 1 are gone, so the oldest left is 2
+    history.get(0, m_pose);
+    assertEquals(2, m_pose[PoseHistory.kX], kDelta);
+    history.get(3.5, m_pose);
+    assertEquals(3.5, m_pose[PoseHistory.kX], kDelta);
+  }
+
+  @Test
+  void ignoresPosesOlderThanTheNewest() {
+    PoseHistory history = new PoseHistory(4);
+    history.add(2, 2, 0, 0);
+    history.add(1, 1, 0, 0);
+
+    assertEquals(1, history.size());
+  }
+
+  @Test
+  void clearThrowsAwayEveryPose() {
+    PoseHistory history = new PoseHistory(4);
+    history.add(1, 1, 0, 0);
+    history.clear();
+
+    assertEquals(0, history.size());
+    assertFalse(history.get(1, m_pose));
+  }
+
+  @Test
+  void addAndGetDoNotAllocate() {
+    PoseHistory history = new PoseHistory(DriveConstants.kPoseHistoryCapacity);
+    // Warm up the JIT before measuring
+    fill(history, 0, 20_000);
+    long thread = Thread.currentThread().getId();
+    kThreads.getThreadAllocatedBytes(thread);
+
+    long start = kThreads.getThreadAllocatedBytes(thread);
+    fill(history, 20_000, 10_000);
+    assertEquals(0, kThreads.getThreadAllocatedBytes(thread) - start, "bytes allocated");
+  }
+
+  // Adds poses at the odometry rate and looks one up after each
+  private void fill(PoseHistory history, int first, int count) {
+    double period = 1 / DriveConstants.kOdometryFrequencyHz;
+    for (int i = first; i < first + count; i++) {
+      history.add(i * period, Math.sin(i), Math.cos(i), i * 0.001);
+      history.get((i - 0.5) * period, m_pose);
+    }
+  }
+}